@@ -0,0 +1,129 @@
+package com.zhsan.benchmark;
+
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.Troop;
+import com.zhsan.gameobject.pathfinding.ReachableArea;
+import com.zhsan.gameobject.pathfinding.ReachableAreaFinder;
+import com.zhsan.gameobject.pathfinding.ZhPathFinder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline timings for ZhPathFinder and the reachable-area search. Run from core/assets, e.g. with gradle jmh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathfindingBenchmark {
+
+    private static final long SEED = 20151019L;
+    private static final int SHORT_SEARCHES = 100;
+    private static final int SHORT_SEARCH_COST = 40;
+    private static final int THREADS = 4;
+
+    @Param({PathfindingFixture.SHIPPED, "100", "300", "600", "1000"})
+    public String map;
+
+    private PathfindingFixture fixture;
+    private Troop troop;
+    private ZhPathFinder pathFinder;
+    private ReachableAreaFinder reachableAreaFinder;
+
+    private Point longFrom, longTo;
+    private Point[] shortFrom, shortTo;
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        private ZhPathFinder pathFinder;
+        private ReachableArea area = new ReachableArea();
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(PathfindingBenchmark b) {
+            // IndexedAStarPathFinder keeps search state per instance, so each thread needs its own
+            pathFinder = new ZhPathFinder(b.fixture.getScenario(), b.fixture.getScenario().getGameMap(), b.troop);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixture = PathfindingFixture.create(map, SEED);
+        troop = fixture.getTroop();
+        pathFinder = new ZhPathFinder(fixture.getScenario(), fixture.getScenario().getGameMap(), troop);
+        reachableAreaFinder = fixture.getScenario().getReachableAreaFinder();
+
+        longFrom = troop.getLocation();
+        longTo = fixture.furthestReachablePoint();
+
+        shortFrom = new Point[SHORT_SEARCHES];
+        shortTo = new Point[SHORT_SEARCHES];
+        for (int i = 0; i < SHORT_SEARCHES; ++i) {
+            Point from = fixture.randomPassablePoint();
+            shortFrom[i] = from;
+            shortTo[i] = fixture.nearbyPoint(from, SHORT_SEARCH_COST);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<Point> longSearch() {
+        return pathFinder.findPath(longFrom, longTo);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SHORT_SEARCHES)
+    public void shortSearches(Blackhole bh) {
+        for (int i = 0; i < SHORT_SEARCHES; ++i) {
+            bh.consume(pathFinder.findPath(shortFrom[i], shortTo[i]));
+        }
+    }
+
+    @Benchmark
+    public int reachableArea(PerThread t) {
+        return reachableAreaFinder.find(troop, longFrom, troop.getKind().getMovability(), t.area).size();
+    }
+
+    @Benchmark
+    public List<Point> pointsWithinCost() {
+        return pathFinder.getPointsWithinCost(longFrom, troop.getKind().getMovability());
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public List<Point> concurrentShortSearches(PerThread t) {
+        int i = t.next++ % SHORT_SEARCHES;
+        return t.pathFinder.findPath(shortFrom[i], shortTo[i]);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public int concurrentReachableArea(PerThread t) {
+        int i = t.next++ % SHORT_SEARCHES;
+        return reachableAreaFinder.find(troop, shortFrom[i], troop.getKind().getMovability(), t.area).size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PathfindingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+}
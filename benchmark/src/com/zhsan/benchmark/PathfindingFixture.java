@@ -0,0 +1,182 @@
+package com.zhsan.benchmark;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.IntArray;
+import com.opencsv.CSVWriter;
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.GameScenario;
+import com.zhsan.gameobject.Troop;
+import com.zhsan.gameobject.pathfinding.DistanceField;
+import com.zhsan.gameobject.pathfinding.ReachableArea;
+import com.zhsan.gameobject.pathfinding.TerrainCosts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * A scenario for benchmarking, copied to a temporary directory from the shipped one. The map is either kept or
+ * replaced by a generated square map, and a single idle troop is added for the pathfinders to work with.
+ */
+public final class PathfindingFixture implements Closeable {
+
+    public static final String SHIPPED = "shipped";
+    public static final String SCENARIO = "GameData/Scenario/194QXGJ 7";
+
+    private static final int PLAIN = 1;
+    private static final int[] OBSTACLES = {2, 2, 3, 3, 5, 5, 8, 9, 10, 6, 7};
+
+    private final Path root;
+    private final GameScenario scenario;
+    private final Troop troop;
+    private final TerrainCosts costs;
+    private final Random random;
+
+    private PathfindingFixture(Path root, long seed) throws IOException {
+        this.root = root;
+        this.random = new Random(seed);
+        this.scenario = new GameScenario(new FileHandle(root.toFile()), false, -1);
+
+        // the travel costs are computed in the background on the common pool, which the timings must not share
+        try {
+            scenario.getTravelCostMatrix().awaitRefresh();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while travel costs were computed");
+        }
+
+        this.troop = scenario.getTroops().getFirst();
+        this.costs = scenario.getReachableAreaFinder().getTerrainCosts(troop.getKind());
+
+        troop.setLocation(randomPassablePoint());
+    }
+
+    /**
+     * @param map either SHIPPED or the side length of a generated map
+     */
+    public static PathfindingFixture create(String map, long seed) throws IOException {
+        Path source = Paths.get(SCENARIO);
+        Path root = Files.createTempDirectory("zhsan-benchmark");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(source)) {
+            for (Path f : files) {
+                Files.copy(f, root.resolve(f.getFileName()));
+            }
+        }
+
+        if (!SHIPPED.equals(map)) {
+            writeMap(root, Integer.parseInt(map), new Random(seed));
+        }
+        writeTroop(root);
+
+        return new PathfindingFixture(root, seed);
+    }
+
+    private static void writeMap(Path root, int size, Random random) throws IOException {
+        int[] terrain = new int[size * size];
+        for (int i = 0; i < terrain.length; ++i) {
+            terrain[i] = PLAIN;
+        }
+
+        int blobs = size * size / 300;
+        for (int b = 0; b < blobs; ++b) {
+            int t = OBSTACLES[random.nextInt(OBSTACLES.length)];
+            int cx = random.nextInt(size), cy = random.nextInt(size), r = 2 + random.nextInt(7);
+            for (int y = Math.max(0, cy - r); y <= Math.min(size - 1, cy + r); ++y) {
+                for (int x = Math.max(0, cx - r); x <= Math.min(size - 1, cx + r); ++x) {
+                    if ((x - cx) * (x - cx) + (y - cy) * (y - cy) <= r * r) {
+                        terrain[y * size + x] = t;
+                    }
+                }
+            }
+        }
+
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(root.resolve("Map.csv"), StandardCharsets.UTF_8))) {
+            writer.writeNext(new String[]{"zoom", "width", "height", "fileName", "imageCount", "tileInEachImage"});
+            writer.writeNext(new String[]{"60", String.valueOf(size), String.valueOf(size), "kure_2.0", "1", "10"});
+        }
+
+        try (Writer writer = Files.newBufferedWriter(root.resolve("MapData.txt"), StandardCharsets.UTF_8)) {
+            for (int y = 0; y < size; ++y) {
+                for (int x = 0; x < size; ++x) {
+                    writer.write(String.format("%3s", terrain[y * size + x]));
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    private static void writeTroop(Path root) throws IOException {
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(root.resolve("Troop.csv"), StandardCharsets.UTF_8))) {
+            writer.writeNext(new String[]{"id", "aitag", "location", "order", "orderTarget", "section", "startArchitecture"});
+            writer.writeNext(new String[]{"0", "", "0 0", "idle", "", "0", "0"});
+        }
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(root.resolve("Military.csv"), StandardCharsets.UTF_8))) {
+            writer.writeNext(new String[]{"id", "aitag", "name", "kind", "locationType", "location",
+                    "quantity", "morale", "combativity", "leader", "persons"});
+            writer.writeNext(new String[]{"0", "", "benchmark", "1", "2", "0", "10000", "100", "100", "0", "0"});
+        }
+    }
+
+    public GameScenario getScenario() {
+        return scenario;
+    }
+
+    public Troop getTroop() {
+        return troop;
+    }
+
+    public Point randomPassablePoint() {
+        while (true) {
+            int x = random.nextInt(costs.getWidth()), y = random.nextInt(costs.getHeight());
+            if (costs.isPassable(x + y * costs.getWidth()) && scenario.getArchitectureAt(new Point(x, y)) == null) {
+                return new Point(x, y);
+            }
+        }
+    }
+
+    /**
+     * The reachable tile furthest away from the troop, by terrain cost.
+     */
+    public Point furthestReachablePoint() {
+        IntArray goals = new IntArray();
+        Point from = troop.getLocation();
+        goals.add(from.y * costs.getWidth() + from.x);
+        int[] field = DistanceField.towards(costs, goals, null);
+
+        int best = 0;
+        for (int i = 0; i < field.length; ++i) {
+            if (field[i] != DistanceField.UNREACHABLE && field[i] > field[best]) {
+                best = i;
+            }
+        }
+        return new Point(best % costs.getWidth(), best / costs.getWidth());
+    }
+
+    /**
+     * A random tile that costs at most about maxCost to reach from the given one.
+     */
+    public Point nearbyPoint(Point from, int maxCost) {
+        ReachableArea area = scenario.getReachableAreaFinder().find(troop, from, maxCost);
+        return area.getPoint(area.size() / 2 + random.nextInt(Math.max(1, area.size() - area.size() / 2)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -4,6 +4,11 @@
 -- All output will be written to Lua/AI/Logs/Faction<ID>.log files
 
 -- Additionally, you can use dump(var) function to print the content of the variable, for debugging and inspection
+-- `memory` is a table kept from one day to the next and saved with the game, e.g. for plans that are only updated
+-- where something changed. It can hold booleans, numbers, strings, tables and game objects
+-- `kernels` holds the Java AI kernels for heavy numeric work, e.g. kernels.internal.rankPersons(architecture, "agriculture")
+-- scenario.getStrength(factionId, x, y), scenario.getThreat(factionId, x, y) and scenario.getArchitectureThreat(id)
+-- read the influence grids without scanning troops, e.g. to find the most threatened architecture or the front line
 -- PATH is the Lua AI Path
 
 dofile(PATH .. "sectionAI.lua")
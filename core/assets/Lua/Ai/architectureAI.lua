@@ -15,16 +15,7 @@ end
 function assignMayor(architecture)
    -- assign mayor: the best total internal values
    if architecture.canChangeMayorToOther() then
-      local max = 0
-      local candidate
-      for i, v in pairs(architecture.getPersons()) do
-         local ability = v.getAgricultureAbility() + v.getCommerceAbility() + v.getTechnologyAbility()
-                 + v.getEnduranceAbility() + v.getMoraleAbility()
-         if ability > max then
-            max = ability
-            candidate = v
-         end
-      end
+      local candidate = kernels.internal.pickMayor(architecture)
       print("Assigning mayor to " .. candidate.getName())
       architecture.changeMayor(candidate.getId())
    end
@@ -38,18 +29,16 @@ function assignInternal(architecture)
       end
    end
 
-   local getSortedPersons = function(func)
-      local persons = architecture.getPersons()
-      table.sort(persons, function(p, q) return func(p) > func(q) end)
-      return persons
+   local getSortedPersons = function(work)
+      return kernels.internal.rankPersons(architecture, work)
    end
 
    local taskValues = {
-      {architecture.getAgriculture(), "agriculture", getSortedPersons(function(x) return x.getAgricultureAbility() end)},
-      {architecture.getCommerce(), "commerce", getSortedPersons(function(x) return x.getCommerceAbility() end)},
-      {architecture.getTechnology(), "technology", getSortedPersons(function(x) return x.getTechnologyAbility() end)},
-      {architecture.getMorale(), "morale", getSortedPersons(function(x) return x.getMoraleAbility() end)},
-      {architecture.getEndurance(), "endurance", getSortedPersons(function(x) return x.getEnduranceAbility() end)},
+      {architecture.getAgriculture(), "agriculture", getSortedPersons("agriculture")},
+      {architecture.getCommerce(), "commerce", getSortedPersons("commerce")},
+      {architecture.getTechnology(), "technology", getSortedPersons("technology")},
+      {architecture.getMorale(), "morale", getSortedPersons("morale")},
+      {architecture.getEndurance(), "endurance", getSortedPersons("endurance")},
    }
    table.sort(taskValues, function(p, q) return p[1] < q[1] end)
    local everybodyHasWork = false
@@ -0,0 +1,325 @@
+package com.zhsan.common;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a CSV file field by field, straight from its bytes. Numbers, points and lists of ids are parsed where they
+ * lie in the buffer, so only the fields read as strings become Strings. The fields of a row are read in order, each
+ * get moving on to the next field.
+ *
+ * A field may be quoted, in which case it may hold commas, line breaks and doubled quotes; it is otherwise taken as
+ * it is up to the next comma or line break. A UTF-8 byte order mark and empty lines are skipped.
+ */
+public final class CSVTokenizer {
+
+    private final byte[] data;
+    private final int end;
+    private int pos;
+
+    private int row;
+    private int column;
+    private boolean rowEnded = true;
+
+    // the current field, either in data or, if it had doubled quotes, unescaped into scratch
+    private byte[] field;
+    private int fieldStart, fieldEnd;
+    private byte[] scratch = new byte[64];
+
+    private int[] ints = new int[16];
+
+    public CSVTokenizer(byte[] data) {
+        this.data = data;
+        this.end = data.length;
+        if (end >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            pos = 3;
+        }
+    }
+
+    public static CSVTokenizer read(FileHandle f) {
+        return new CSVTokenizer(f.readBytes());
+    }
+
+    /**
+     * Move to the start of the next row, skipping what is left of the current one
+     * @return false if there are no more rows
+     */
+    public boolean nextRow() throws IOException {
+        while (!rowEnded) {
+            nextField();
+        }
+        while (pos < end && (data[pos] == '\n' || data[pos] == '\r')) {
+            pos++;
+        }
+        if (pos >= end) {
+            return false;
+        }
+        row++;
+        column = 0;
+        rowEnded = false;
+        return true;
+    }
+
+    /**
+     * Whether the current row has fields left to read
+     */
+    public boolean hasMoreFields() {
+        return !rowEnded;
+    }
+
+    public void skipField() throws IOException {
+        nextField();
+    }
+
+    public String getString() throws IOException {
+        nextField();
+        return new String(field, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+    }
+
+    public boolean getBoolean() throws IOException {
+        nextField();
+        // as Boolean.parseBoolean
+        byte[] t = {'t', 'r', 'u', 'e'};
+        if (fieldEnd - fieldStart != t.length) return false;
+        for (int i = 0; i < t.length; ++i) {
+            if ((field[fieldStart + i] | 0x20) != t[i]) return false;
+        }
+        return true;
+    }
+
+    public int getInt() throws IOException {
+        nextField();
+        long v = parseLong(fieldStart, fieldEnd);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw error("number out of range");
+        }
+        return (int) v;
+    }
+
+    public long getLong() throws IOException {
+        nextField();
+        return parseLong(fieldStart, fieldEnd);
+    }
+
+    public float getFloat() throws IOException {
+        nextField();
+
+        // digits with a decimal point, as the game writes them, are parsed here; anything else by Float.parseFloat
+        int i = fieldStart;
+        boolean negative = i < fieldEnd && field[i] == '-';
+        if (negative || (i < fieldEnd && field[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0, decimals = 0;
+        boolean point = false, simple = i < fieldEnd;
+        for (; i < fieldEnd; ++i) {
+            byte c = field[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + c - '0';
+                digits++;
+                if (point) decimals++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        // both operands are exact as floats, so that the division is rounded once, as Float.parseFloat would do
+        if (simple && digits > 0 && digits <= 18 && mantissa <= (1 << 24) && decimals <= 10) {
+            float result = decimals == 0 ? mantissa : (float) mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -result : result;
+        }
+
+        String s = new String(field, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+        try {
+            return Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            throw error("not a number: " + s);
+        }
+    }
+
+    private static final float[] POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /**
+     * A field of whitespace separated integers, such as a list of ids
+     */
+    public int[] getInts() throws IOException {
+        nextField();
+        int n = 0;
+        int i = fieldStart;
+        while (true) {
+            while (i < fieldEnd && isSpace(field[i])) i++;
+            if (i >= fieldEnd) break;
+            int start = i;
+            while (i < fieldEnd && !isSpace(field[i])) i++;
+            long v = parseLong(start, i);
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+                throw error("number out of range");
+            }
+            if (n == ints.length) {
+                ints = Arrays.copyOf(ints, n * 2);
+            }
+            ints[n++] = (int) v;
+        }
+        return Arrays.copyOf(ints, n);
+    }
+
+    /**
+     * A field of two whitespace separated integers
+     */
+    public Point getPoint() throws IOException {
+        int[] v = getInts();
+        if (v.length < 2) {
+            throw error("not a point");
+        }
+        return new Point(v[0], v[1]);
+    }
+
+    /**
+     * A field of whitespace separated pairs of integers
+     */
+    public List<Point> getPoints() throws IOException {
+        int[] v = getInts();
+        List<Point> result = new ArrayList<>(v.length / 2);
+        for (int i = 0; i + 1 < v.length; i += 2) {
+            result.add(new Point(v[i], v[i + 1]));
+        }
+        return result;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    private long parseLong(int from, int to) throws IOException {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (field[i] == '-' || field[i] == '+')) {
+            negative = field[i] == '-';
+            i++;
+        }
+        if (i >= to) {
+            throw error("not a number: " + new String(field, from, to - from, StandardCharsets.UTF_8));
+        }
+        long result = 0;
+        for (; i < to; ++i) {
+            byte c = field[i];
+            if (c < '0' || c > '9' || result > (Long.MAX_VALUE - 9) / 10) {
+                throw error("not a number: " + new String(field, from, to - from, StandardCharsets.UTF_8));
+            }
+            result = result * 10 + c - '0';
+        }
+        return negative ? -result : result;
+    }
+
+    private void nextField() throws IOException {
+        if (rowEnded) {
+            throw error("too few fields");
+        }
+        column++;
+
+        int start = pos;
+        while (start < end && (data[start] == ' ' || data[start] == '\t')) start++;
+
+        if (start < end && data[start] == '"') {
+            int close = start + 1;
+            while (close < end && data[close] != '"') close++;
+            if (close >= end) {
+                throw error("unterminated quote");
+            }
+            if (close + 1 < end && data[close + 1] == '"') {
+                unescape(start + 1);
+            } else {
+                field = data;
+                fieldStart = start + 1;
+                fieldEnd = close;
+                pos = close + 1;
+                // anything between the closing quote and the separator is part of the field, as opencsv reads it
+                if (pos < end && !isSeparator(data[pos])) {
+                    unescape(start + 1);
+                }
+            }
+        } else {
+            int i = pos;
+            while (i < end && !isSeparator(data[i])) i++;
+            field = data;
+            fieldStart = pos;
+            fieldEnd = i;
+            pos = i;
+        }
+
+        endField();
+    }
+
+    private static boolean isSeparator(byte c) {
+        return c == ',' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Copy a quoted field starting at from, just after its opening quote, into scratch with its quotes resolved
+     */
+    private void unescape(int from) throws IOException {
+        int n = 0;
+        int i = from;
+        boolean quoted = true;
+        while (true) {
+            if (i >= end) {
+                if (quoted) throw error("unterminated quote");
+                break;
+            }
+            byte c = data[i];
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < end && data[i + 1] == '"') {
+                        c = '"';
+                        i++;
+                    } else {
+                        quoted = false;
+                        i++;
+                        continue;
+                    }
+                }
+            } else if (isSeparator(c)) {
+                break;
+            } else if (c == '"') {
+                quoted = true;
+                i++;
+                continue;
+            }
+            if (n == scratch.length) {
+                scratch = Arrays.copyOf(scratch, n * 2);
+            }
+            scratch[n++] = c;
+            i++;
+        }
+        field = scratch;
+        fieldStart = 0;
+        fieldEnd = n;
+        pos = i;
+    }
+
+    private void endField() {
+        if (pos >= end) {
+            rowEnded = true;
+        } else if (data[pos] == ',') {
+            pos++;
+        } else {
+            // a line break; a lone \r as well as \r\n and \n
+            if (data[pos] == '\r') pos++;
+            if (pos < end && data[pos] == '\n') pos++;
+            rowEnded = true;
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Row " + row + ", field " + column + ": " + message);
+    }
+
+}
@@ -20,6 +20,7 @@ public final class GlobalVariables {
 
     public static float scrollSpeed = 1.0f;
     public static boolean showGrid = true;
+    public static boolean showInfluence = false;
 
     public static int maxRunningDays = 99;
     public static Color blankColor = Color.WHITE;
@@ -59,6 +60,7 @@ public final class GlobalVariables {
     public static float reactDamageFactor = 0.5f;
 
     public static long aiTimeout = 20;
+    public static long aiInstructionBudget = 50000000;
 
     public static float personMovingSpeed = 8.0f;
 
@@ -68,6 +70,26 @@ public final class GlobalVariables {
     public static float troopStrengthPersonFactor = 0.5f;
     public static float troopIntelligencePersonFactor = 1.0f;
 
+    public static boolean cooperativePathPlanning = false;
+    public static int cooperativePlanningWindow = 16;
+    public static int pathCacheCapacity = 4096;
+
+    public static int influenceCellSize = 8;
+    public static int influenceRadius = 3;
+
+    public static boolean deltaSaves = true;
+    public static int saveCompactInterval = 10;
+
+    public static boolean luaJit = false;
+
+    public static String aiLogLevel = "INFO";
+    public static long aiLogMaxBytes = 1048576;
+    public static int aiLogBackups = 3;
+    public static boolean aiLogDump = true;
+    public static boolean aiProfiler = false;
+    public static boolean pipelineAi = false;
+    public static String factionAi = "lua";
+
     public static void load() {
         FileHandle f = Gdx.files.external(Paths.DATA + "GlobalVariables.xml");
 
@@ -81,6 +103,7 @@ public final class GlobalVariables {
             Node node = dom.getElementsByTagName("GlobalVariables").item(0);
             scrollSpeed = Float.parseFloat(XmlHelper.loadAttribute(node, "scrollSpeed"));
             showGrid = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "showGrid"));
+            showInfluence = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "showInfluence"));
             maxRunningDays = Integer.parseInt(XmlHelper.loadAttribute(node, "maxRunningDays"));
             blankColor = XmlHelper.loadColorFromXml(Integer.parseUnsignedInt(
                     XmlHelper.loadAttribute(node, "blankColor")
@@ -97,6 +120,7 @@ public final class GlobalVariables {
             gainFoodPerPopulation = Float.parseFloat(XmlHelper.loadAttribute(node, "gainFoodPerPopulation"));
             internalCost = Integer.parseInt(XmlHelper.loadAttribute(node, "internalCost"));
             aiTimeout = Long.parseLong(XmlHelper.loadAttribute(node, "aiTimeout"));
+            aiInstructionBudget = Long.parseLong(XmlHelper.loadAttribute(node, "aiInstructionBudget"));
             recruitCostFactor = Float.parseFloat(XmlHelper.loadAttribute(node, "recruitCostFactor"));
             recruitEfficiency = Float.parseFloat(XmlHelper.loadAttribute(node, "recruitEfficiency"));
             recruitByLeaderEfficiency = Float.parseFloat(XmlHelper.loadAttribute(node, "recruitByLeaderEfficiency"));
@@ -118,6 +142,21 @@ public final class GlobalVariables {
             troopCommandPersonFactor = Float.parseFloat(XmlHelper.loadAttribute(node, "troopCommandPersonFactor"));
             troopStrengthPersonFactor = Float.parseFloat(XmlHelper.loadAttribute(node, "troopStrengthPersonFactor"));
             troopIntelligencePersonFactor = Float.parseFloat(XmlHelper.loadAttribute(node, "troopIntelligencePersonFactor"));
+            cooperativePathPlanning = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "cooperativePathPlanning"));
+            cooperativePlanningWindow = Integer.parseInt(XmlHelper.loadAttribute(node, "cooperativePlanningWindow"));
+            pathCacheCapacity = Integer.parseInt(XmlHelper.loadAttribute(node, "pathCacheCapacity"));
+            influenceCellSize = Integer.parseInt(XmlHelper.loadAttribute(node, "influenceCellSize"));
+            influenceRadius = Integer.parseInt(XmlHelper.loadAttribute(node, "influenceRadius"));
+            deltaSaves = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "deltaSaves"));
+            saveCompactInterval = Integer.parseInt(XmlHelper.loadAttribute(node, "saveCompactInterval"));
+            luaJit = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "luaJit"));
+            aiLogLevel = XmlHelper.loadAttribute(node, "aiLogLevel");
+            aiLogMaxBytes = Long.parseLong(XmlHelper.loadAttribute(node, "aiLogMaxBytes"));
+            aiLogBackups = Integer.parseInt(XmlHelper.loadAttribute(node, "aiLogBackups"));
+            aiLogDump = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "aiLogDump"));
+            aiProfiler = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "aiProfiler"));
+            pipelineAi = Boolean.parseBoolean(XmlHelper.loadAttribute(node, "pipelineAi"));
+            factionAi = XmlHelper.loadAttribute(node, "factionAi");
         } catch (Exception e) {
             throw new FileReadException(Paths.DATA + "GlobalVariables.xml", e);
         }
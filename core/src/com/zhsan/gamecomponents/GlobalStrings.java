@@ -68,7 +68,10 @@ public class GlobalStrings {
         MOVE_TO_ENTER("MoveToEnter"),
         RECALL_PERSON("RecallPerson"),
         MOVE_PERSON("MovePerson"),
-        SELECT_DESTINATION("SelectDestination");
+        SELECT_DESTINATION("SelectDestination"),
+        SAVING("Saving"),
+        SAVED("Saved"),
+        SAVE_FAILED("SaveFailed");
 
         private final String xmlName;
         Keys(String name) {
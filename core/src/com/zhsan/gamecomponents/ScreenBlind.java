@@ -6,6 +6,7 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.scenes.scene2d.ui.WidgetGroup;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.zhsan.common.Paths;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.gamecomponents.common.StateTexture;
@@ -33,8 +34,13 @@ public class ScreenBlind extends WidgetGroup {
 
     private Texture spring, summer, autumn, winter;
 
-    private TextWidget date, faction;
-    private Rectangle datePos, factionPos;
+    private TextWidget<Void> date, faction, save;
+    private Rectangle datePos, factionPos, savePos;
+    private long saveShowTime;
+
+    // set from the save writer's callbacks, posted to the render thread
+    private String saveStatus;
+    private long saveStatusUntil = Long.MAX_VALUE;
     private Rectangle seasonPos;
 
     private GameScreen screen;
@@ -61,16 +67,21 @@ public class ScreenBlind extends WidgetGroup {
             winter = new Texture(Gdx.files.external(DATA_PATH + XmlHelper.loadAttribute(season, "Winter")));
 
             Node dateNode = dom.getElementsByTagName("DateClient").item(0);
-            date = new TextWidget(TextWidget.Setting.fromXml(dateNode));
+            date = new TextWidget<>(TextWidget.Setting.fromXml(dateNode));
             datePos = XmlHelper.loadRectangleFromXml(dateNode);
             dateFormatter = DateTimeFormatter.ofPattern(XmlHelper.loadAttribute(dateNode, "Pattern"));
 
             Node factionNode = dom.getElementsByTagName("FactionClient").item(0);
-            faction = new TextWidget(TextWidget.Setting.fromXml(factionNode));
+            faction = new TextWidget<>(TextWidget.Setting.fromXml(factionNode));
             factionPos = XmlHelper.loadRectangleFromXml(factionNode);
 
             seasonPos = XmlHelper.loadRectangleFromXml(dom.getElementsByTagName("SeasonClient").item(0));
 
+            Node saveNode = dom.getElementsByTagName("SaveClient").item(0);
+            save = new TextWidget<>(TextWidget.Setting.fromXml(saveNode));
+            savePos = XmlHelper.loadRectangleFromXml(saveNode);
+            saveShowTime = Long.parseLong(XmlHelper.loadAttribute(saveNode, "ShowTime"));
+
         } catch (Exception e) {
             throw new FileReadException(RES_PATH + "ScreenBlindData.xml", e);
         }
@@ -119,6 +130,24 @@ public class ScreenBlind extends WidgetGroup {
             faction.setSize(factionPos.width, factionPos.height);
             faction.draw(batch, parentAlpha);
         }
+
+        if (saveStatus != null && TimeUtils.millis() > saveStatusUntil) {
+            saveStatus = null;
+        }
+        if (saveStatus != null) {
+            save.setText(saveStatus);
+            save.setPosition(getX() + savePos.x, getY() + savePos.y);
+            save.setSize(savePos.width, savePos.height);
+            save.draw(batch, parentAlpha);
+        }
+    }
+
+    /**
+     * Show how a save is going. Once it is finished, the status is shown for a while and then hidden.
+     */
+    public void showSaveStatus(String status, boolean finished) {
+        saveStatus = status;
+        saveStatusUntil = finished ? TimeUtils.millis() + saveShowTime : Long.MAX_VALUE;
     }
 
     public void dispose() {
@@ -129,6 +158,7 @@ public class ScreenBlind extends WidgetGroup {
         winter.dispose();
         date.dispose();
         faction.dispose();
+        save.dispose();
     }
 
 }
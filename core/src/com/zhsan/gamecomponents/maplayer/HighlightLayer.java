@@ -6,6 +6,7 @@ import com.badlogic.gdx.graphics.g2d.Batch;
 import com.zhsan.common.Point;
 import com.zhsan.gameobject.GameScenario;
 import com.zhsan.gameobject.Troop;
+import com.zhsan.gameobject.pathfinding.ReachableArea;
 import com.zhsan.screen.GameScreen;
 
 import java.util.ArrayList;
@@ -20,6 +21,7 @@ public class HighlightLayer implements MapLayer {
 
     private Texture moveTo;
     private List<Point> moveToHighlight = new ArrayList<>();
+    private ReachableArea moveToArea = new ReachableArea();
 
     public HighlightLayer(GameScenario scenario) {
         this.moveTo = new Texture(Gdx.files.external(MainMapLayer.DATA_PATH + "MoveTo.png"));
@@ -42,8 +44,8 @@ public class HighlightLayer implements MapLayer {
 
     @Override
     public void onStartSelectingLocation(Troop troop) {
-        moveToHighlight = scenario.getPathFinder(troop).getPointsWithinCost(
-                troop.getLocation(), troop.getMilitary().getKind().getMovability());
+        moveToHighlight = scenario.getReachableAreaFinder().find(troop,
+                troop.getLocation(), troop.getMilitary().getKind().getMovability(), moveToArea).getPoints();
     }
 
     @Override
@@ -0,0 +1,83 @@
+package com.zhsan.gamecomponents.maplayer;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.Faction;
+import com.zhsan.gameobject.GameObjectList;
+import com.zhsan.gameobject.InfluenceMap;
+import com.zhsan.screen.GameScreen;
+
+/**
+ * Tints each influence cell with the color of the strongest faction there, more faintly where it is contested.
+ * Shown while GlobalVariables.showInfluence is on, toggled with E.
+ */
+public class InfluenceLayer implements MapLayer {
+
+    private static final float MAX_ALPHA = 0.4f;
+
+    private Texture blank;
+
+    public InfluenceLayer() {
+        Pixmap pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+        pixmap.setColor(Color.WHITE);
+        pixmap.fill();
+        blank = new Texture(pixmap);
+        pixmap.dispose();
+    }
+
+    @Override
+    public void draw(GameScreen screen, String resPack, DrawingHelpers helpers, int zoom, Batch batch, float parentAlpha) {
+        if (!GlobalVariables.showInfluence) return;
+
+        InfluenceMap map = screen.getScenario().getInfluenceMap();
+        GameObjectList<Faction> factions = screen.getScenario().getFactions();
+        int size = map.getCellSize();
+
+        Color old = batch.getColor().cpy();
+        for (int y = 0; y < map.getHeight(); ++y) {
+            for (int x = 0; x < map.getWidth(); ++x) {
+                if (!isCellOnScreen(helpers, x * size, y * size, size)) continue;
+
+                float total = map.getCellTotal(x, y);
+                if (total <= 0) continue;
+
+                Faction strongest = null;
+                float best = 0;
+                for (Faction f : factions) {
+                    float s = map.getCellStrength(f, x, y);
+                    if (s > best) {
+                        best = s;
+                        strongest = f;
+                    }
+                }
+                if (strongest == null) continue;
+
+                Color c = strongest.getColor();
+                batch.setColor(c.r, c.g, c.b, MAX_ALPHA * best / total * parentAlpha);
+
+                // pixels grow upwards while map locations grow downwards, so the cell starts at the pixel of its last row
+                Point px = helpers.getPixelFromMapLocation(new Point(x * size, y * size + size - 1));
+                batch.draw(blank, px.x, px.y, size * zoom, size * zoom);
+            }
+        }
+        batch.setColor(old);
+    }
+
+    private static boolean isCellOnScreen(DrawingHelpers helpers, int x, int y, int size) {
+        return helpers.isMapLocationOnScreen(new Point(x, y)) ||
+                helpers.isMapLocationOnScreen(new Point(x + size - 1, y)) ||
+                helpers.isMapLocationOnScreen(new Point(x, y + size - 1)) ||
+                helpers.isMapLocationOnScreen(new Point(x + size - 1, y + size - 1)) ||
+                helpers.isMapLocationOnScreen(new Point(x + size / 2, y + size / 2));
+    }
+
+    @Override
+    public void dispose() {
+        blank.dispose();
+    }
+
+}
@@ -138,6 +138,7 @@ public class MainMapLayer extends WidgetGroup {
         troopAnimationLayer = new TroopAnimationLayer();
         tileAnimationLayer = new TileAnimationLayer();
         damageLayer = new DamageLayer();
+        mapLayers.add(new InfluenceLayer());
         mapLayers.add(new ArchitectureLayer(captionSize));
         mapLayers.add(new FacilityLayer());
         mapLayers.add(tileAnimationLayer);
@@ -438,6 +439,9 @@ public class MainMapLayer extends WidgetGroup {
             if (keycode == Input.Keys.Q) {
                 GlobalVariables.showGrid = !GlobalVariables.showGrid;
             }
+            if (keycode == Input.Keys.E) {
+                GlobalVariables.showInfluence = !GlobalVariables.showInfluence;
+            }
             if (screen.allowRunDays()) {
                 if (keycode == Input.Keys.NUM_1) {
                     screen.getDayRunner().runDays(1);
@@ -2,8 +2,8 @@ package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.math.MathUtils;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Point;
 import com.zhsan.common.Utility;
@@ -14,14 +14,13 @@ import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.function.Predicate;
 
 /**
  * Created by Peter on 24/5/2015.
  */
-public class Architecture extends GameObject implements HasPointLocation {
+public class Architecture extends GameObject implements HasPointLocation, HasFaction {
 
     public static final String SAVE_FILE = "Architecture.csv";
 
@@ -50,29 +49,26 @@ public class Architecture extends GameObject implements HasPointLocation {
         GameObjectList<Architecture> result = new GameObjectList<>();
 
         FileHandle f = root.child(Architecture.SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Architecture data = new Architecture(Integer.parseInt(line[0]), scen);
-                data.setAiTags(line[1]);
-                data.nameImageName = line[2];
-                data.name = line[3];
-                data.architectureKind = scen.getArchitectureKinds().get(Integer.parseInt(line[4]));
-                data.location = Point.fromCSVList(line[5]);
-                data.belongedSection = scen.getSections().get(Integer.parseInt(line[6]));
-                data.population = Integer.parseInt(line[7]);
-                data.fund = Integer.parseInt(line[8]);
-                data.food = Integer.parseInt(line[9]);
-                data.agriculture = Float.parseFloat(line[10]);
-                data.commerce = Float.parseFloat(line[11]);
-                data.technology = Float.parseFloat(line[12]);
-                data.morale = Float.parseFloat(line[13]);
-                data.endurance = Float.parseFloat(line[14]);
-                data.creatableMilitaryKinds = scen.getMilitaryKinds().getItemsFromCSV(line[15]);
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Architecture data = new Architecture(in.getInt(), scen);
+                data.setAiTags(in.getString());
+                data.nameImageName = in.getString();
+                data.name = in.getString();
+                data.architectureKind = scen.getArchitectureKinds().get(in.getInt());
+                data.location = in.getPoints();
+                data.belongedSection = scen.getSections().get(in.getInt());
+                data.population = in.getInt();
+                data.fund = in.getInt();
+                data.food = in.getInt();
+                data.agriculture = in.getFloat();
+                data.commerce = in.getFloat();
+                data.technology = in.getFloat();
+                data.morale = in.getFloat();
+                data.endurance = in.getFloat();
+                data.creatableMilitaryKinds = scen.getMilitaryKinds().getItems(in.getInts());
 
                 result.add(data);
             }
@@ -113,6 +109,59 @@ public class Architecture extends GameObject implements HasPointLocation {
 
     }
 
+    static GameObjectList<Architecture> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Architecture> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Architecture data = new Architecture(in.getInt(), scen);
+            data.setAiTags(in.getString());
+            data.nameImageName = in.getString();
+            data.name = in.getString();
+            data.architectureKind = scen.getArchitectureKinds().get(in.getInt());
+            data.location = in.getPoints();
+            data.belongedSection = scen.getSections().get(in.getInt());
+            data.population = in.getInt();
+            data.fund = in.getInt();
+            data.food = in.getInt();
+            data.agriculture = in.getFloat();
+            data.commerce = in.getFloat();
+            data.technology = in.getFloat();
+            data.morale = in.getFloat();
+            data.endurance = in.getFloat();
+            data.creatableMilitaryKinds = in.getObjects(scen.getMilitaryKinds());
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Architecture> data) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Architecture d : data) {
+            out.beginRecord();
+            out.putInt(d.getId());
+            out.putString(d.getAiTags());
+            out.putString(d.nameImageName);
+            out.putString(d.getName());
+            out.putInt(d.architectureKind.getId());
+            out.putPoints(d.location);
+            out.putInt(d.belongedSection == null ? -1 : d.belongedSection.getId());
+            out.putInt(d.population);
+            out.putInt(d.fund);
+            out.putInt(d.food);
+            out.putFloat(d.agriculture);
+            out.putFloat(d.commerce);
+            out.putFloat(d.technology);
+            out.putFloat(d.morale);
+            out.putFloat(d.endurance);
+            out.putIds(d.creatableMilitaryKinds);
+        }
+        out.endTable();
+    }
+
     @Override
     @LuaAI.ExportToLua
     public String getName() {
@@ -147,16 +196,20 @@ public class Architecture extends GameObject implements HasPointLocation {
                     .min((x, y) -> Double.compare(this.getLocation().distanceTo(x.getLocation()), this.getLocation().distanceTo(y.getLocation())))
                     .orElse(null);
             if (moveTo != null) {
-                this.getPersons().forEach(p -> p.moveToArchitecture(this.getLocation(), moveTo));
+                this.getPersons().forEach(p -> p.moveToArchitecture(this, moveTo));
             }
         }
     }
 
     public void changeSection(Section n) {
-        if (this.belongedSection != null && this.belongedSection.getBelongedFaction() != n.getBelongedFaction()) {
+        boolean factionChanged = this.belongedSection != null && this.belongedSection.getBelongedFaction() != n.getBelongedFaction();
+        if (factionChanged) {
             changeFaction();
         }
         this.belongedSection = n;
+        if (factionChanged) {
+            scenario.onArchitectureChanged(this);
+        }
     }
 
     public GameObjectList<Person> getPersonsIncludingMoving() {
@@ -204,14 +257,17 @@ public class Architecture extends GameObject implements HasPointLocation {
         return this.getKind().getName();
     }
 
+    @LuaAI.ExportToLua
     public int getPopulation() {
         return population;
     }
 
+    @LuaAI.ExportToLua
     public int getFund() {
         return fund;
     }
 
+    @LuaAI.ExportToLua
     public int getFood() {
         return food;
     }
@@ -278,6 +334,7 @@ public class Architecture extends GameObject implements HasPointLocation {
     }
 
     @LuaAI.ExportToLua
+    @LuaAI.AiCommand
     public void changeMayor(int id) {
         changeMayor(scenario.getPerson(id), false);
     }
@@ -426,13 +483,21 @@ public class Architecture extends GameObject implements HasPointLocation {
     }
 
     public boolean loseEndurance(int quantity) {
+        boolean blocking = this.endurance > 0;
         this.endurance = Math.max(0, this.endurance - quantity);
+        if (blocking && this.endurance <= 0) {
+            scenario.onArchitectureChanged(this);
+        }
         return this.endurance <= 0;
     }
 
     public void advanceDay() {
+        boolean blocking = this.endurance > 0;
         loseInternal();
         developInternal();
+        if (blocking != (this.endurance > 0)) {
+            scenario.onArchitectureChanged(this);
+        }
         recruitMilitaries();
         trainMilitaries();
         if (scenario.getGameDate().getDayOfMonth() == 1) {
@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 7/4/2015.
@@ -44,26 +43,23 @@ public final class ArchitectureKind extends GameObject {
         GameObjectList<ArchitectureKind> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                ArchitectureKind kind = new ArchitectureKindBuilder().setId(Integer.parseInt(line[0]))
-                        .setAitag(line[1])
-                        .setName(line[2])
-                        .setDrawOffsetL(Float.parseFloat(line[3]))
-                        .setDrawOffsetW(Float.parseFloat(line[4]))
-                        .setAgriculture(Integer.parseInt(line[5]))
-                        .setCommerce(Integer.parseInt(line[6]))
-                        .setTechnology(Integer.parseInt(line[7]))
-                        .setMorale(Integer.parseInt(line[8]))
-                        .setEndurance(Integer.parseInt(line[9]))
-                        .setPopulation(Integer.parseInt(line[10]))
-                        .setMaxFund(Long.parseLong(line[11]))
-                        .setMaxFood(Long.parseLong(line[12])).createArchitectureKind();
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                ArchitectureKind kind = new ArchitectureKindBuilder().setId(in.getInt())
+                        .setAitag(in.getString())
+                        .setName(in.getString())
+                        .setDrawOffsetL(in.getFloat())
+                        .setDrawOffsetW(in.getFloat())
+                        .setAgriculture(in.getInt())
+                        .setCommerce(in.getInt())
+                        .setTechnology(in.getInt())
+                        .setMorale(in.getInt())
+                        .setEndurance(in.getInt())
+                        .setPopulation(in.getInt())
+                        .setMaxFund(in.getLong())
+                        .setMaxFood(in.getLong()).createArchitectureKind();
 
                 result.add(kind);
             }
@@ -101,6 +97,52 @@ public final class ArchitectureKind extends GameObject {
 
     }
 
+    static GameObjectList<ArchitectureKind> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<ArchitectureKind> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            ArchitectureKind kind = new ArchitectureKindBuilder().setId(in.getInt())
+                    .setAitag(in.getString())
+                    .setName(in.getString())
+                    .setDrawOffsetL(in.getFloat())
+                    .setDrawOffsetW(in.getFloat())
+                    .setAgriculture(in.getInt())
+                    .setCommerce(in.getInt())
+                    .setTechnology(in.getInt())
+                    .setMorale(in.getInt())
+                    .setEndurance(in.getInt())
+                    .setPopulation(in.getInt())
+                    .setMaxFund(in.getLong())
+                    .setMaxFood(in.getLong()).createArchitectureKind();
+            result.add(kind);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<ArchitectureKind> kinds) {
+        out.beginTable(SAVE_FILE);
+        for (ArchitectureKind detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.getName());
+            out.putFloat(detail.getDrawOffsetLength());
+            out.putFloat(detail.getDrawOffsetWidth());
+            out.putInt(detail.agriculture);
+            out.putInt(detail.commerce);
+            out.putInt(detail.technology);
+            out.putInt(detail.morale);
+            out.putInt(detail.endurance);
+            out.putInt(detail.population);
+            out.putLong(detail.maxFund);
+            out.putLong(detail.maxFood);
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,76 @@
+package com.zhsan.gameobject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads one numeric attribute over many game objects at once, for the bulk queries of GameScenario. An attribute
+ * is named like the fields of GameObject.getField, e.g. "Fund" for getFund(); its getter is resolved once per class
+ * into a method handle answering a double.
+ */
+final class BulkQuery {
+
+    private static final MethodType DOUBLE_GETTER = MethodType.methodType(double.class, Object.class);
+
+    private static final ClassValue<Map<String, MethodHandle>> getters = new ClassValue<Map<String, MethodHandle>>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private BulkQuery() {}
+
+    static GameObjectList<? extends GameObject> objectsOf(GameScenario scen, String kind) {
+        switch (kind) {
+            case "faction": return scen.getFactions();
+            case "section": return scen.getSections();
+            case "architecture": return scen.getArchitectures();
+            case "person": return scen.getPersons();
+            case "military": return scen.getMilitaries();
+            case "troop": return scen.getTroops();
+            default: throw new IllegalArgumentException("Unknown kind of game object: " + kind);
+        }
+    }
+
+    static int[] ids(Collection<? extends GameObject> objects) {
+        int[] result = new int[objects.size()];
+        int n = 0;
+        for (GameObject o : objects) {
+            result[n++] = o.getId();
+        }
+        return result;
+    }
+
+    static double get(GameObject o, String attribute) {
+        try {
+            return (double) getter(o.getClass(), attribute).invokeExact((Object) o);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> klass, String attribute) {
+        return getters.get(klass).computeIfAbsent(attribute, a -> {
+            String name = "get" + Character.toUpperCase(a.charAt(0)) + a.substring(1);
+            try {
+                Method m = klass.getMethod(name);
+                Class<?> type = m.getReturnType();
+                if (!type.isPrimitive() || type == boolean.class || type == void.class) {
+                    throw new IllegalArgumentException(klass.getSimpleName() + "." + name + " is not numeric");
+                }
+                return MethodHandles.publicLookup().unreflect(m).asType(DOUBLE_GETTER);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException(klass.getSimpleName() + " has no attribute " + a, e);
+            }
+        });
+    }
+
+}
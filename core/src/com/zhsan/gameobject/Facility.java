@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.Point;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
@@ -10,7 +10,6 @@ import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 25/5/2015.
@@ -42,19 +41,16 @@ public class Facility extends GameObject {
         }
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Facility data = new Facility(in.getInt(), scen);
 
-                Facility data = new Facility(Integer.parseInt(line[0]), scen);
-
-                data.kind = scen.getFacilityKinds().get(Integer.parseInt(line[1]));
-                data.location = Point.fromCSV(line[2]);
-                data.belongedArchitecture = scen.getArchitectures().get(Integer.parseInt(line[3]));
-                data.endurance = Integer.parseInt(line[4]);
+                data.kind = scen.getFacilityKinds().get(in.getInt());
+                data.location = in.getPoint();
+                data.belongedArchitecture = scen.getArchitectures().get(in.getInt());
+                data.endurance = in.getInt();
 
                 result.add(data);
             }
@@ -84,6 +80,37 @@ public class Facility extends GameObject {
 
     }
 
+    static GameObjectList<Facility> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Facility> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Facility data = new Facility(in.getInt(), scen);
+            data.kind = scen.getFacilityKinds().get(in.getInt());
+            data.location = in.getPoint();
+            data.belongedArchitecture = scen.getArchitectures().get(in.getInt());
+            data.endurance = in.getInt();
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Facility> kinds) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Facility detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putInt(detail.kind.getId());
+            out.putPoint(detail.location);
+            out.putInt(detail.belongedArchitecture.getId());
+            out.putInt(detail.endurance);
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return kind.getName();
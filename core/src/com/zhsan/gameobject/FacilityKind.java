@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 25/5/2015.
@@ -41,20 +40,17 @@ public final class FacilityKind extends GameObject {
         GameObjectList<FacilityKind> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                FacilityKind kind = new FacilityKindBuilder().setId(Integer.parseInt(line[0]))
-                        .setAiTags(line[1])
-                        .setName(line[2])
-                        .setEndurance(Integer.parseInt(line[3]))
-                        .setIndestructible(Boolean.parseBoolean(line[4]))
-                        .setMustHave(Boolean.parseBoolean(line[5]))
-                        .setCanBuildAtTerrain(scen.getTerrainDetails().getItemsFromCSV(line[6]))
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                FacilityKind kind = new FacilityKindBuilder().setId(in.getInt())
+                        .setAiTags(in.getString())
+                        .setName(in.getString())
+                        .setEndurance(in.getInt())
+                        .setIndestructible(in.getBoolean())
+                        .setMustHave(in.getBoolean())
+                        .setCanBuildAtTerrain(scen.getTerrainDetails().getItems(in.getInts()))
                         .createFacilityKind();
 
                 result.add(kind);
@@ -87,6 +83,41 @@ public final class FacilityKind extends GameObject {
 
     }
 
+    static GameObjectList<FacilityKind> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<FacilityKind> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            FacilityKind kind = new FacilityKindBuilder().setId(in.getInt())
+                    .setAiTags(in.getString())
+                    .setName(in.getString())
+                    .setEndurance(in.getInt())
+                    .setIndestructible(in.getBoolean())
+                    .setMustHave(in.getBoolean())
+                    .setCanBuildAtTerrain(in.getObjects(scen.getTerrainDetails()))
+                    .createFacilityKind();
+            result.add(kind);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<FacilityKind> kinds) {
+        out.beginTable(SAVE_FILE);
+        for (FacilityKind detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.name);
+            out.putInt(detail.endurance);
+            out.putBoolean(detail.indestructible);
+            out.putBoolean(detail.mustHave);
+            out.putIds(detail.canBuildAtTerrain);
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -2,17 +2,17 @@ package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.common.XmlHelper;
 import com.zhsan.gamecomponents.GlobalStrings;
+import com.zhsan.lua.FactionAIs;
 import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -43,18 +43,15 @@ public class Faction extends GameObject {
         GameObjectList<Faction> result = new GameObjectList<>();
 
         FileHandle f = root.child(Faction.SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Faction t = new Faction(Integer.parseInt(line[0]), scen);
-                t.setAiTags(line[1]);
-                t.name = line[2];
-                t.color = XmlHelper.loadColorFromXml(Integer.parseUnsignedInt(line[3]));
-                t.leaderId = Integer.parseInt(line[4]);
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Faction t = new Faction(in.getInt(), scen);
+                t.setAiTags(in.getString());
+                t.name = in.getString();
+                t.color = XmlHelper.loadColorFromXml((int) in.getLong());
+                t.leaderId = in.getInt();
 
                 result.add(t);
             }
@@ -69,15 +66,13 @@ public class Faction extends GameObject {
         GameObjectList<Faction> result = new GameObjectList<>();
 
         FileHandle f = root.child(Faction.SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Faction t = new Faction(Integer.parseInt(line[0]), null);
-                t.name = line[2];
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Faction t = new Faction(in.getInt(), null);
+                in.skipField();
+                t.name = in.getString();
  
                 result.add(t);
             }
@@ -107,6 +102,37 @@ public class Faction extends GameObject {
 
     }
 
+    static GameObjectList<Faction> fromBinary(SaveReader in, GameScenario scen) {
+        GameObjectList<Faction> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Faction t = new Faction(in.getInt(), scen);
+            t.setAiTags(in.getString());
+            t.name = in.getString();
+            t.color = XmlHelper.loadColorFromXml(in.getInt());
+            t.leaderId = in.getInt();
+
+            result.add(t);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Faction> data) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Faction d : data) {
+            out.beginRecord();
+            out.putInt(d.getId());
+            out.putString(d.getAiTags());
+            out.putString(d.getName());
+            out.putInt(Color.argb8888(d.color));
+            out.putInt(d.leader.getId());
+        }
+        out.endTable();
+    }
+
     int getLeaderId() {
         return leaderId;
     }
@@ -153,6 +179,26 @@ public class Faction extends GameObject {
         return scenario.getTroops().filter(t -> t.getBelongedFaction() == this);
     }
 
+    @LuaAI.ExportToLua
+    public int getPersonCount() {
+        return getPersons().size();
+    }
+
+    @LuaAI.ExportToLua
+    public int getArchitectureCount() {
+        return getArchitectures().size();
+    }
+
+    @LuaAI.ExportToLua
+    public int getMilitaryCount() {
+        return getMilitaries().size();
+    }
+
+    @LuaAI.ExportToLua
+    public int getTroopCount() {
+        return getTroops().size();
+    }
+
     Person pickLeader() {
         return this.getPersons().max((p, q) -> Integer.compare(p.getAbilitySum(), q.getAbilitySum()));
     }
@@ -169,7 +215,7 @@ public class Faction extends GameObject {
     }
 
     public void ai() {
-        LuaAI.runFactionAi(scenario, this);
+        FactionAIs.run(scenario, this);
     }
 
 }
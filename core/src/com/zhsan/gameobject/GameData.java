@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.EmptyFileException;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
@@ -11,7 +11,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 14/5/2015.
@@ -30,21 +29,19 @@ public class GameData {
 
         FileHandle f = root.child(SAVE_FILE);
 
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
                 GameData data = new GameData();
 
-                if (line[0].length() > 0) {
-                    data.currentPlayer = scen.getFactions().get(Integer.parseInt(line[0]));
+                String currentPlayer = in.getString();
+                if (currentPlayer.length() > 0) {
+                    data.currentPlayer = scen.getFactions().get(Integer.parseInt(currentPlayer));
                 } else {
                     data.currentPlayer = null;
                 }
-                data.dayPassed = Integer.parseInt(line[1]);
+                data.dayPassed = in.getInt();
 
                 return data;
             }
@@ -69,6 +66,24 @@ public class GameData {
 
     }
 
+    static GameData fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        in.beginTable(SAVE_FILE);
+        in.nextRecord();
+
+        GameData data = new GameData();
+        data.currentPlayer = scen.getFactions().get(in.getInt());
+        data.dayPassed = in.getInt();
+        return data;
+    }
+
+    static void toBinary(SaveWriter out, GameData data) {
+        out.beginTable(SAVE_FILE);
+        out.beginRecord();
+        out.putInt(data.currentPlayer != null ? data.currentPlayer.getId() : -1);
+        out.putInt(data.dayPassed);
+        out.endTable();
+    }
+
     public void setCurrentPlayer(@Nullable Faction currentPlayer) {
         this.currentPlayer = currentPlayer;
     }
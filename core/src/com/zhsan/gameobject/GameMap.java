@@ -1,8 +1,9 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.Point;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
@@ -10,6 +11,11 @@ import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Created by Peter on 17/3/2015.
@@ -18,6 +24,11 @@ public class GameMap {
 
     public static final String SAVE_FILE = "Map.csv";
     public static final String MAP_DATA_FILE = "MapData.txt";
+    public static final String MAP_DATA_BINARY_FILE = "MapData.bin";
+
+    private static final int MAP_DATA_MAGIC = 0x5A48534D; // "ZHSM"
+    private static final int MAP_DATA_VERSION = 1;
+    private static final int MAP_DATA_HEADER_SIZE = 20;
 
     private int zoom;
     private final int width;
@@ -37,55 +48,178 @@ public class GameMap {
         this.mapData = mapData;
     }
 
-    private static TerrainDetail[][] readMapData(GameScenario scen, int width, int height, String line) {
-        TerrainDetail[][] result = new TerrainDetail[height][width];
-        String[] split = line.trim().split("\\s+");
-        for (int i = 0; i < result.length; ++i) {
-            for (int j = 0; j < result[i].length; ++j) {
-                result[j][i] = scen.getTerrainDetails().get(Integer.parseInt(split[i * result.length + j]));
+    /**
+     * Terrain details indexed by id, so that looking up a tile is an array access
+     */
+    private static TerrainDetail[] terrainsById(GameScenario scen) {
+        int max = 0;
+        for (TerrainDetail t : scen.getTerrainDetails()) {
+            max = Math.max(max, t.getId());
+        }
+        TerrainDetail[] result = new TerrainDetail[max + 1];
+        for (TerrainDetail t : scen.getTerrainDetails()) {
+            result[t.getId()] = t;
+        }
+        return result;
+    }
+
+    private static TerrainDetail terrainOf(TerrainDetail[] terrains, int id) {
+        return id >= 0 && id < terrains.length ? terrains[id] : null;
+    }
+
+    /**
+     * Parse MapData.txt, whitespace separated terrain ids row by row, straight from its bytes
+     */
+    private static TerrainDetail[][] readMapText(GameScenario scen, int width, int height, byte[] text) throws IOException {
+        TerrainDetail[] terrains = terrainsById(scen);
+        TerrainDetail[][] result = new TerrainDetail[width][height];
+
+        int n = 0, i = 0;
+        while (n < width * height) {
+            while (i < text.length && (text[i] < '0' || text[i] > '9')) {
+                i++;
             }
+            if (i >= text.length) {
+                throw new IOException("Expected " + width * height + " tiles but found " + n);
+            }
+            int id = 0;
+            while (i < text.length && text[i] >= '0' && text[i] <= '9') {
+                id = id * 10 + text[i] - '0';
+                i++;
+            }
+            result[n % width][n / width] = terrainOf(terrains, id);
+            n++;
         }
         return result;
     }
 
+    /**
+     * Read MapData.bin whole into memory. It is not mapped, as a mapping would keep the file locked on Windows
+     * until it is collected, so that the file could not be written or deleted again
+     * @return the map data, or null if the file does not describe a map of this size
+     */
+    private static TerrainDetail[][] readMapBinary(GameScenario scen, int width, int height, FileHandle f) throws IOException {
+        byte[] data = Files.readAllBytes(f.file().toPath());
+        if (data.length < MAP_DATA_HEADER_SIZE) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt() != MAP_DATA_MAGIC || buffer.getInt() != MAP_DATA_VERSION) return null;
+        if (buffer.getInt() != width || buffer.getInt() != height) return null;
+        int tileSize = buffer.getInt();
+        if ((tileSize != 1 && tileSize != 2) || buffer.remaining() < width * height * tileSize) return null;
+
+        TerrainDetail[] terrains = terrainsById(scen);
+        TerrainDetail[][] result = new TerrainDetail[width][height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int id = tileSize == 1 ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+                result[x][y] = terrainOf(terrains, id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write MapData.bin: a header, then the terrain id of every tile row by row, in one byte each if all ids fit
+     * and two otherwise
+     */
+    private static void writeMapBinary(FileHandle f, GameMap map) {
+        int tileSize = 1;
+        for (int y = 0; y < map.height; ++y) {
+            for (int x = 0; x < map.width; ++x) {
+                if (map.mapData[x][y].getId() > 0xFF) {
+                    tileSize = 2;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MAP_DATA_HEADER_SIZE + map.width * map.height * tileSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAP_DATA_MAGIC);
+        buffer.putInt(MAP_DATA_VERSION);
+        buffer.putInt(map.width);
+        buffer.putInt(map.height);
+        buffer.putInt(tileSize);
+        if (tileSize == 1) {
+            byte[] tiles = new byte[map.width * map.height];
+            for (int y = 0; y < map.height; ++y) {
+                for (int x = 0; x < map.width; ++x) {
+                    tiles[y * map.width + x] = (byte) map.mapData[x][y].getId();
+                }
+            }
+            buffer.put(tiles);
+        } else {
+            short[] tiles = new short[map.width * map.height];
+            for (int y = 0; y < map.height; ++y) {
+                for (int x = 0; x < map.width; ++x) {
+                    tiles[y * map.width + x] = (short) map.mapData[x][y].getId();
+                }
+            }
+            buffer.asShortBuffer().put(tiles);
+            buffer.position(buffer.limit());
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(f.file().toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new FileWriteException(f.path(), e);
+        }
+    }
+
     public static GameMap fromCSV(FileHandle root, @NotNull GameScenario scen) {
         int version = scen.getGameSurvey().getVersion();
 
         FileHandle f = root.child(SAVE_FILE);
         GameMapBuilder builder = new GameMapBuilder();
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                builder.setZoom(Integer.parseInt(line[0]));
-                builder.setWidth(Integer.parseInt(line[1]));
-                builder.setHeight(Integer.parseInt(line[2]));
-                builder.setFileName(line[3]);
-                builder.setImageCount(Integer.parseInt(line[4]));
-                builder.setTileInEachImage(Integer.parseInt(line[5]));
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                builder.setZoom(in.getInt());
+                builder.setWidth(in.getInt());
+                builder.setHeight(in.getInt());
+                builder.setFileName(in.getString());
+                builder.setImageCount(in.getInt());
+                builder.setTileInEachImage(in.getInt());
             }
         } catch (IOException e) {
             throw new FileReadException(f.path(), e);
         }
 
-        FileHandle data = root.child(MAP_DATA_FILE);
-        try (BufferedReader reader = new BufferedReader(data.reader())) {
-            StringBuilder entireData = new StringBuilder();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                entireData.append(line).append(" ");
+        // MapData.bin is used unless MapData.txt has been edited since; otherwise the text is converted to it
+        FileHandle text = root.child(MAP_DATA_FILE);
+        FileHandle binary = root.child(MAP_DATA_BINARY_FILE);
+        TerrainDetail[][] mapData = null;
+        if (binary.exists() && (!text.exists() || binary.lastModified() >= text.lastModified())) {
+            try {
+                mapData = readMapBinary(scen, builder.width, builder.height, binary);
+            } catch (IOException e) {
+                throw new FileReadException(binary.path(), e);
             }
+        }
 
-            builder.setMapData(readMapData(scen, builder.width, builder.height, entireData.toString()));
-
-            return builder.createGameMap();
-        } catch (IOException e) {
-            throw new FileReadException(f.path(), e);
+        if (mapData == null) {
+            try {
+                mapData = readMapText(scen, builder.width, builder.height, text.readBytes());
+            } catch (IOException | GdxRuntimeException e) {
+                throw new FileReadException(text.path(), e);
+            }
+            builder.setMapData(mapData);
+            GameMap result = builder.createGameMap();
+            try {
+                writeMapBinary(binary, result);
+            } catch (FileWriteException e) {
+                // the scenario directory may not be writable; the text is then read again next time
+            }
+            return result;
         }
+
+        builder.setMapData(mapData);
+        return builder.createGameMap();
     }
 
     public static void toCSV(FileHandle root, GameMap map) {
@@ -104,18 +238,73 @@ public class GameMap {
             throw new FileWriteException(f.path(), e);
         }
 
+        // the text stays the editable form of the map; it is written first so that the binary is not older
         FileHandle data = root.child(MAP_DATA_FILE);
-        try (Writer writer = data.writer(false)) {
-            for (int r = 0; r < map.mapData.length; ++r) {
-                for (int c = 0; c < map.mapData.length; ++c) {
-                    writer.write(String.format("%3s", map.mapData[c][r].getId()));
+        StringBuilder text = new StringBuilder(map.height * (map.width * 3 + 1));
+        for (int y = 0; y < map.height; ++y) {
+            for (int x = 0; x < map.width; ++x) {
+                String id = String.valueOf(map.mapData[x][y].getId());
+                for (int i = id.length(); i < 3; ++i) {
+                    text.append(' ');
                 }
-                writer.write("\n");
+                text.append(id);
             }
-        } catch (IOException e) {
+            text.append('\n');
+        }
+        try {
+            data.writeString(text.toString(), false);
+        } catch (GdxRuntimeException e) {
             throw new FileWriteException(data.path(), e);
         }
 
+        writeMapBinary(root.child(MAP_DATA_BINARY_FILE), map);
+    }
+
+    static GameMap fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameMapBuilder builder = new GameMapBuilder();
+
+        in.beginTable(SAVE_FILE);
+        in.nextRecord();
+        builder.setZoom(in.getInt());
+        builder.setWidth(in.getInt());
+        builder.setHeight(in.getInt());
+        builder.setFileName(in.getString());
+        builder.setImageCount(in.getInt());
+        builder.setTileInEachImage(in.getInt());
+
+        // one record for each row of tiles
+        TerrainDetail[][] mapData = new TerrainDetail[builder.width][builder.height];
+        int rows = in.beginTable(MAP_DATA_FILE);
+        for (int y = 0; y < rows; ++y) {
+            in.nextRecord();
+            for (int x = 0; x < builder.width; ++x) {
+                mapData[x][y] = scen.getTerrainDetails().get(in.getInt());
+            }
+        }
+        builder.setMapData(mapData);
+
+        return builder.createGameMap();
+    }
+
+    static void toBinary(SaveWriter out, GameMap map) {
+        out.beginTable(SAVE_FILE);
+        out.beginRecord();
+        out.putInt(map.zoom);
+        out.putInt(map.width);
+        out.putInt(map.height);
+        out.putString(map.fileName);
+        out.putInt(map.imageCount);
+        out.putInt(map.tileInEachImage);
+        out.endTable();
+
+        out.beginTable(MAP_DATA_FILE);
+        for (int y = 0; y < map.height; ++y) {
+            out.beginRecord();
+            for (int x = 0; x < map.width; ++x) {
+                out.putInt(map.mapData[x][y].getId());
+            }
+        }
+        out.endTable();
     }
 
     /**
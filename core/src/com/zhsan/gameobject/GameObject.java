@@ -34,6 +34,7 @@ public abstract class GameObject {
     }
 
     @LuaAI.ExportToLua
+    @LuaAI.AiCommand
     public GameObject setAiTags(String aiTags) {
         this.aiTags = aiTags;
         return this;
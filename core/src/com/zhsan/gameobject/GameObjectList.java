@@ -1,7 +1,5 @@
 package com.zhsan.gameobject;
 
-import com.zhsan.gamecomponents.common.XmlHelper;
-
 import java.util.*;
 import java.util.function.*;
 import java.util.stream.Collector;
@@ -137,9 +135,15 @@ public class GameObjectList<T extends GameObject> implements Iterable<T> {
         return r;
     }
 
-    public GameObjectList<T> getItemsFromCSV(String s) {
-        List<Integer> ids = XmlHelper.loadIntegerListFromXml(s);
-        return content.values().parallelStream().filter(x -> ids.contains(x.getId())).collect(new ToGameObjectList<>());
+    /**
+     * The items of the given ids, leaving out those not in this list
+     */
+    public GameObjectList<T> getItems(int[] ids) {
+        GameObjectList<T> result = new GameObjectList<>();
+        for (int id : ids) {
+            result.add(content.get(id));
+        }
+        return result;
     }
 
     public String toCSV() {
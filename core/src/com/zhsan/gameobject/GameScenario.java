@@ -2,16 +2,32 @@ package com.zhsan.gameobject;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
+import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Paths;
 import com.zhsan.common.Point;
+import com.zhsan.common.exception.FileWriteException;
+import com.zhsan.gameobject.pathfinding.CooperativePathPlanner;
+import com.zhsan.gameobject.pathfinding.PathCache;
+import com.zhsan.gameobject.pathfinding.ReachableAreaFinder;
+import com.zhsan.gameobject.pathfinding.TravelCostMatrix;
 import com.zhsan.gameobject.pathfinding.ZhPathFinder;
+import com.zhsan.lua.AiMemory;
 import com.zhsan.lua.LuaAI;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Peter on 8/3/2015.
@@ -22,6 +38,12 @@ public class GameScenario {
         public void onTroopAnimationDone();
     }
 
+    public interface OnSaveProgress {
+        public void onSaveProgress(int done, int total);
+
+        public void onSaveDone(FileHandle directory, @Nullable Exception error);
+    }
+
     public interface OnTroopDone {
         public void onStartTroopStep(Troop t, Point oldLoc, Point newLoc, OnTroopAnimationDone onTroopAnimationDone);
 
@@ -30,36 +52,68 @@ public class GameScenario {
         public void onAttackDone(Troop t, HasPointLocation target, List<DamagePack> damagePacks);
     }
 
-    public static final int SAVE_VERSION = 2;
+    /**
+     * Saves from this version on keep everything but the game survey in BINARY_SAVE_FILE; older ones, and all
+     * scenarios as authored, are a set of CSV files
+     */
+    public static final int SAVE_VERSION = 3;
+    public static final int BINARY_SAVE_VERSION = 3;
+    public static final int CSV_SAVE_VERSION = 2;
+
+    public static final String BINARY_SAVE_FILE = "Scenario.bin";
 
     public static final String SCENARIO_PATH = Paths.DATA + "Scenario" + File.separator;
     public static final String SAVE_PATH = Paths.DATA + "Save" + File.separator;
 
+    // saves are written one after another, in the order they were taken
+    private static final ExecutorService saveWriter = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "Save writer"));
+
+    // one thread per core; with a single core, the files are loaded one after another as before
+    private static final ExecutorService loader = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "Scenario loader");
+                t.setDaemon(true);
+                return t;
+            });
+
     private final GameSurvey gameSurvey;
-    private final GameObjectList<TerrainDetail> terrainDetails;
-    private final GameMap gameMap;
 
-    private final GameData gameData;
+    // assigned by the load tasks of the constructor, each on a thread of its own
+    private GameObjectList<TerrainDetail> terrainDetails;
+    private GameMap gameMap;
+
+    private GameData gameData;
 
-    private final GameObjectList<ArchitectureKind> architectureKinds;
+    private GameObjectList<ArchitectureKind> architectureKinds;
 
-    private final GameObjectList<Facility> facilities;
-    private final GameObjectList<FacilityKind> facilityKinds;
+    private GameObjectList<Facility> facilities;
+    private GameObjectList<FacilityKind> facilityKinds;
 
-    private final GameObjectList<MilitaryType> militaryTypes;
-    private final GameObjectList<MilitaryKind> militaryKinds;
-    private final GameObjectList<MilitaryTerrain> militaryTerrains;
+    private GameObjectList<MilitaryType> militaryTypes;
+    private GameObjectList<MilitaryKind> militaryKinds;
+    private GameObjectList<MilitaryTerrain> militaryTerrains;
 
-    private final GameObjectList<TroopAnimation> troopAnimations;
+    private GameObjectList<TroopAnimation> troopAnimations;
 
-    private final GameObjectList<Architecture> architectures;
-    private final GameObjectList<Section> sections;
-    private final GameObjectList<Faction> factions;
-    private final GameObjectList<Person> persons;
-    private final GameObjectList<Military> militaries;
-    private final GameObjectList<Troop> troops;
+    private GameObjectList<Architecture> architectures;
+    private GameObjectList<Section> sections;
+    private GameObjectList<Faction> factions;
+    private GameObjectList<Person> persons;
+    private GameObjectList<Military> militaries;
+    private GameObjectList<Troop> troops;
 
     private HashMap<Troop, ZhPathFinder> pathFinders = new HashMap<>();
+    private final ReachableAreaFinder reachableAreaFinder = new ReachableAreaFinder(this);
+    private final CooperativePathPlanner cooperativePathPlanner = new CooperativePathPlanner(this);
+    private final PathCache pathCache;
+    private final TravelCostMatrix travelCostMatrix;
+    private final InfluenceMap influenceMap;
+
+    private final AiMemory aiMemory;
+
+    private SaveChain saveChain;
+    private int saveGeneration;
 
     public static List<Pair<FileHandle, GameSurvey>> loadAllGameSurveys() {
         List<Pair<FileHandle, GameSurvey>> result = new ArrayList<>();
@@ -75,39 +129,72 @@ public class GameScenario {
     }
 
     public static GameObjectList<Faction> loadFactionsQuick(FileHandle root, int version) {
+        if (version >= BINARY_SAVE_VERSION) {
+            return Faction.fromBinary(SaveReader.readChain(root, BINARY_SAVE_FILE), null);
+        }
         return Faction.fromCSVQuick(root);
     }
 
     public GameScenario(FileHandle file, boolean newGame, int playerFactionId) {
         gameSurvey = GameSurvey.fromCSV(file);
 
-        // load common data
-        terrainDetails = TerrainDetail.fromCSV(file, this);
-        gameMap = GameMap.fromCSV(file, this);
-        architectureKinds = ArchitectureKind.fromCSV(file, this);
-
-        facilityKinds = FacilityKind.fromCSV(file, this);
-
-        militaryTypes = MilitaryType.fromCSV(file, this);
-        militaryKinds = MilitaryKind.fromCSV(file, this);
-
-        militaryTerrains = MilitaryTerrain.fromCSV(file, this);
-
-        troopAnimations = TroopAnimation.fromCSV(file, this);
-
-        // load game objects
         int version = gameSurvey.getVersion();
-
-        factions = Faction.fromCSV(file, this);
-        sections = Section.fromCSV(file, this);
-        architectures = Architecture.fromCSV(file, this);
-        troops = Troop.fromCSV(file, this);
-        persons = Person.fromCSV(file, this);
-        militaries = Military.fromCSV(file, this);
-
-        facilities = Facility.fromCSV(file, this);
-
-        gameData = GameData.fromCSV(file, this);
+        SaveReader bin = version >= BINARY_SAVE_VERSION ? SaveReader.readChain(file, BINARY_SAVE_FILE) : null;
+
+        // Each file is loaded by a task of its own, started once the tasks it looks up objects from are done, so
+        // that files independent of each other are read at the same time. Objects are linked to each other
+        // further once everything is loaded.
+        CompletableFuture<Void> terrainDetailsLoaded = load(() -> terrainDetails = bin == null ?
+                TerrainDetail.fromCSV(file, this) : TerrainDetail.fromBinary(bin.copy(), this));
+        CompletableFuture<Void> gameMapLoaded = load(() -> gameMap = bin == null ?
+                GameMap.fromCSV(file, this) : GameMap.fromBinary(bin.copy(), this), terrainDetailsLoaded);
+        CompletableFuture<Void> architectureKindsLoaded = load(() -> architectureKinds = bin == null ?
+                ArchitectureKind.fromCSV(file, this) : ArchitectureKind.fromBinary(bin.copy(), this));
+
+        CompletableFuture<Void> facilityKindsLoaded = load(() -> facilityKinds = bin == null ?
+                FacilityKind.fromCSV(file, this) : FacilityKind.fromBinary(bin.copy(), this), terrainDetailsLoaded);
+
+        CompletableFuture<Void> militaryTypesLoaded = load(() -> militaryTypes = bin == null ?
+                MilitaryType.fromCSV(file, this) : MilitaryType.fromBinary(bin.copy(), this));
+        CompletableFuture<Void> militaryKindsLoaded = load(() -> militaryKinds = bin == null ?
+                MilitaryKind.fromCSV(file, this) : MilitaryKind.fromBinary(bin.copy(), this), militaryTypesLoaded);
+
+        CompletableFuture<Void> militaryTerrainsLoaded = load(() -> militaryTerrains = bin == null ?
+                MilitaryTerrain.fromCSV(file, this) : MilitaryTerrain.fromBinary(bin.copy(), this),
+                militaryKindsLoaded, terrainDetailsLoaded);
+
+        CompletableFuture<Void> troopAnimationsLoaded = load(() -> troopAnimations = bin == null ?
+                TroopAnimation.fromCSV(file, this) : TroopAnimation.fromBinary(bin.copy(), this));
+
+        CompletableFuture<Void> factionsLoaded = load(() -> factions = bin == null ?
+                Faction.fromCSV(file, this) : Faction.fromBinary(bin.copy(), this));
+        CompletableFuture<Void> sectionsLoaded = load(() -> sections = bin == null ?
+                Section.fromCSV(file, this) : Section.fromBinary(bin.copy(), this), factionsLoaded);
+        CompletableFuture<Void> architecturesLoaded = load(() -> architectures = bin == null ?
+                Architecture.fromCSV(file, this) : Architecture.fromBinary(bin.copy(), this),
+                architectureKindsLoaded, militaryKindsLoaded, sectionsLoaded);
+        CompletableFuture<Void> troopsLoaded = load(() -> troops = bin == null ?
+                Troop.fromCSV(file, this) : Troop.fromBinary(bin.copy(), this), sectionsLoaded, architecturesLoaded);
+        CompletableFuture<Void> personsLoaded = load(() -> persons = bin == null ?
+                Person.fromCSV(file, this) : Person.fromBinary(bin.copy(), this), architecturesLoaded, troopsLoaded);
+        CompletableFuture<Void> militariesLoaded = load(() -> militaries = bin == null ?
+                Military.fromCSV(file, this) : Military.fromBinary(bin.copy(), this),
+                militaryKindsLoaded, architecturesLoaded, troopsLoaded, personsLoaded);
+
+        CompletableFuture<Void> facilitiesLoaded = load(() -> facilities = bin == null ?
+                Facility.fromCSV(file, this) : Facility.fromBinary(bin.copy(), this),
+                facilityKindsLoaded, architecturesLoaded);
+
+        CompletableFuture<Void> gameDataLoaded = load(() -> gameData = bin == null ?
+                GameData.fromCSV(file, this) : GameData.fromBinary(bin.copy(), this), factionsLoaded);
+
+        await(gameMapLoaded, militaryTerrainsLoaded, troopAnimationsLoaded, militariesLoaded, facilitiesLoaded,
+                gameDataLoaded);
+
+        pathCache = new PathCache(gameMap.getWidth(), gameMap.getHeight(), GlobalVariables.pathCacheCapacity);
+        influenceMap = new InfluenceMap(this, gameMap.getWidth(), gameMap.getHeight());
+
+        aiMemory = AiMemory.load(file, this);
 
         if (newGame) {
             Faction playerFaction = factions.get(playerFactionId);
@@ -120,6 +207,36 @@ public class GameScenario {
         setupLeaders();
         setupMayors();
         setupFacilities();
+
+        travelCostMatrix = new TravelCostMatrix(this);
+        travelCostMatrix.computeInBackground();
+
+        influenceMap.rebuild();
+
+        if (bin != null) {
+            SaveWriter state = new SaveWriter(SAVE_VERSION);
+            writeGameState(state);
+            saveChain = SaveChain.loaded(file, bin, state.getHashes());
+        }
+    }
+
+    private static CompletableFuture<Void> load(Runnable task, CompletableFuture<?>... dependencies) {
+        return CompletableFuture.allOf(dependencies).thenRunAsync(task, loader);
+    }
+
+    private static void await(CompletableFuture<?>... tasks) {
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            // throw what the loader threw, such as a FileReadException
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private final void setupLeaders() {
@@ -207,8 +324,14 @@ public class GameScenario {
         return new GameObjectList<>(architectures, true);
     }
 
+    @LuaAI.ExportToLua
+    public Architecture getArchitecture(int id) {
+        return architectures.get(id);
+    }
+
+    @LuaAI.ExportToLua
     public Person getPerson(int id) {
-        return persons.filter(p -> p.getId() == id).getFirst();
+        return persons.get(id);
     }
 
     public GameObjectList<Person> getPersons() {
@@ -268,8 +391,9 @@ public class GameScenario {
         return new GameObjectList<>(militaries, true);
     }
 
+    @LuaAI.ExportToLua
     public Military getMilitary(int id) {
-        return militaries.filter(x -> x.getId() == id).getFirst();
+        return militaries.get(id);
     }
 
     public GameObjectList<TroopAnimation> getTroopAnimations() {
@@ -280,11 +404,18 @@ public class GameScenario {
         return new GameObjectList<>(troops, true);
     }
 
+    @LuaAI.ExportToLua
+    public Troop getTroop(int id) {
+        return troops.get(id);
+    }
+
     public void removeTroop(Troop t, boolean removeMilitary) {
         if (removeMilitary) {
             militaries.remove(t.getMilitary());
         }
         troops.remove(t);
+        pathCache.onTroopRemoved(t);
+        influenceMap.removeTroop(t);
     }
 
     public MilitaryTerrain getMilitaryTerrain(MilitaryKind kind, TerrainDetail terrain) {
@@ -308,6 +439,176 @@ public class GameScenario {
         return pathFinders.get(kind);
     }
 
+    public ReachableAreaFinder getReachableAreaFinder() {
+        return reachableAreaFinder;
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    public TravelCostMatrix getTravelCostMatrix() {
+        return travelCostMatrix;
+    }
+
+    public AiMemory getAiMemory() {
+        return aiMemory;
+    }
+
+    public InfluenceMap getInfluenceMap() {
+        return influenceMap;
+    }
+
+    /**
+     * Strength of the faction around the map location, from its troops' offense and its architectures' endurance
+     */
+    @LuaAI.ExportToLua
+    public float getStrength(int factionId, int x, int y) {
+        return influenceMap.getStrength(factions.get(factionId), new Point(x, y));
+    }
+
+    /**
+     * Strength of all other factions around the map location
+     */
+    @LuaAI.ExportToLua
+    public float getThreat(int factionId, int x, int y) {
+        return influenceMap.getThreat(factions.get(factionId), new Point(x, y));
+    }
+
+    /**
+     * Strength of all factions other than its owner around the architecture
+     */
+    @LuaAI.ExportToLua
+    public float getArchitectureThreat(int architectureId) {
+        Architecture a = architectures.get(architectureId);
+        if (a == null) {
+            return 0;
+        }
+        return influenceMap.getThreat(a.getBelongedFaction(), a.getLocation());
+    }
+
+    @LuaAI.ExportToLua
+    public int getTravelCost(int militaryKindId, int fromArchitectureId, int toArchitectureId) {
+        return travelCostMatrix.getCost(militaryKinds.get(militaryKindId),
+                architectures.get(fromArchitectureId), architectures.get(toArchitectureId));
+    }
+
+    @LuaAI.ExportToLua
+    public float getTravelDays(int militaryKindId, int fromArchitectureId, int toArchitectureId) {
+        MilitaryKind kind = militaryKinds.get(militaryKindId);
+        int cost = travelCostMatrix.getCost(kind, architectures.get(fromArchitectureId), architectures.get(toArchitectureId));
+        if (cost == TravelCostMatrix.UNKNOWN || cost == TravelCostMatrix.UNREACHABLE) {
+            return -1;
+        }
+        return (float) cost / kind.getMovability();
+    }
+
+    @LuaAI.ExportToLua
+    public float getOnFootTravelDays(int fromArchitectureId, int toArchitectureId) {
+        int cost = travelCostMatrix.getOnFootCost(architectures.get(fromArchitectureId), architectures.get(toArchitectureId));
+        if (cost == TravelCostMatrix.UNKNOWN || cost == TravelCostMatrix.UNREACHABLE) {
+            return -1;
+        }
+        return cost / GlobalVariables.personMovingSpeed;
+    }
+
+    /**
+     * Ids of the game objects of a kind, "faction", "section", "architecture", "person", "military" or "troop", that
+     * belong to the faction, or of all of them if factionId is -1
+     */
+    @LuaAI.ExportToLua
+    public int[] getIds(String kind, int factionId) {
+        GameObjectList<? extends GameObject> objects = BulkQuery.objectsOf(this, kind);
+        if (factionId < 0) {
+            return BulkQuery.ids(objects.getAll());
+        }
+        Faction f = factions.get(factionId);
+        List<GameObject> owned = new ArrayList<>();
+        for (GameObject o : objects) {
+            if (o == f || (o instanceof HasFaction && ((HasFaction) o).getBelongedFaction() == f)) {
+                owned.add(o);
+            }
+        }
+        return BulkQuery.ids(owned);
+    }
+
+    /**
+     * Ids of the persons of the faction, or of all persons if factionId is -1, in the given state ("normal",
+     * "unemployed"...) and doing the given work ("none", "agriculture"...). A nil state or work matches any.
+     */
+    @LuaAI.ExportToLua
+    public int[] getPersonIds(int factionId, String state, String work) {
+        Faction f = factionId < 0 ? null : factions.get(factionId);
+        Person.State s = state == null ? null : Person.State.fromCSV(state);
+        Person.DoingWork w = work == null ? null : Person.DoingWork.fromCSV(work);
+        List<Person> result = new ArrayList<>();
+        for (Person p : persons) {
+            if ((factionId < 0 || p.getBelongedFaction() == f) && (s == null || p.getState() == s) &&
+                    (w == null || p.getDoingWorkType() == w)) {
+                result.add(p);
+            }
+        }
+        return BulkQuery.ids(result);
+    }
+
+    /**
+     * A numeric attribute, e.g. "Fund", of each of the given objects of a kind, 0 for an id that does not exist
+     */
+    @LuaAI.ExportToLua
+    public double[] getValues(String kind, int[] ids, String attribute) {
+        GameObjectList<? extends GameObject> objects = BulkQuery.objectsOf(this, kind);
+        double[] result = new double[ids.length];
+        for (int i = 0; i < ids.length; ++i) {
+            GameObject o = objects.get(ids[i]);
+            if (o != null) {
+                result[i] = BulkQuery.get(o, attribute);
+            }
+        }
+        return result;
+    }
+
+    @LuaAI.ExportToLua
+    public double getSum(String kind, int[] ids, String attribute) {
+        double sum = 0;
+        for (double v : getValues(kind, ids, attribute)) {
+            sum += v;
+        }
+        return sum;
+    }
+
+    /**
+     * The largest value of the attribute over the given objects, or -math.huge if there are none
+     */
+    @LuaAI.ExportToLua
+    public double getMax(String kind, int[] ids, String attribute) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double v : getValues(kind, ids, attribute)) {
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    /**
+     * Ids of the troops within the given distance, in tiles, of the architecture
+     */
+    @LuaAI.ExportToLua
+    public int[] getTroopIdsNear(int architectureId, double distance) {
+        Architecture a = architectures.get(architectureId);
+        if (a == null) {
+            return new int[0];
+        }
+        List<Troop> result = new ArrayList<>();
+        for (Troop t : troops) {
+            for (Point p : a.getLocations()) {
+                if (p.distanceTo(t.getLocation()) <= distance) {
+                    result.add(t);
+                    break;
+                }
+            }
+        }
+        return BulkQuery.ids(result);
+    }
+
     public boolean createMilitary(Architecture location, MilitaryKind kind) {
         int cost = kind.getCost(location);
         if (cost > location.getFund()) return false;
@@ -329,46 +630,74 @@ public class GameScenario {
         persons.getAll().parallelStream().forEach(Person::advanceDay);
 
         troops.getAll().parallelStream().forEach(Troop::initExecuteOrder);
+        if (GlobalVariables.cooperativePathPlanning) {
+            cooperativePathPlanner.plan(troops.getAll());
+        }
         List<Troop> movingTroops = new ArrayList<>(troops.getAll());
         do {
             // TODO move all troops in parallel
             Iterator<Troop> it = movingTroops.iterator();
             while (it.hasNext()) {
                 Troop t = it.next();
+                if (t.isDestroyed()) {
+                    // destroyed by an attack earlier this day
+                    it.remove();
+                    continue;
+                }
                 Point oldLoc = t.getLocation();
 
-                HasPointLocation target = t.canAttackTarget();
+                // attacks and entries are resolved here, and the animations only show them, so that the world is
+                // settled once advanceDay returns, and may be read by the AI while the animations still play
+                HasPointLocation inRange = t.canAttackTarget();
+                HasPointLocation target = inRange instanceof Troop && ((Troop) inRange).isDestroyed() ? null : inRange;
                 if (!t.stepForward()) {
                     if (target != null) {
-                        onTroopDone.onStartAttackStep(t, target, () -> {
-                            List<DamagePack> damagePacks = t.attack();
-                            onTroopDone.onAttackDone(t, target, damagePacks);
-                        });
+                        List<DamagePack> damagePacks = t.attack();
+                        onTroopDone.onStartAttackStep(t, target, () -> onTroopDone.onAttackDone(t, target, damagePacks));
                     }
                     it.remove();
                 } else {
                     Point newLoc = t.getLocation();
                     if (!oldLoc.equals(newLoc)) {
+                        boolean entered = t.tryEnter(newLoc);
+                        List<DamagePack> damagePacks = !entered && target != null ? t.attack() : null;
                         onTroopDone.onStartTroopStep(t, oldLoc, newLoc, () -> {
-                            if (t.tryEnter(newLoc)) {
-                                it.remove();
-                                return;
-                            }
-                            if (target != null) {
-                                List<DamagePack> damagePacks = t.attack();
+                            if (damagePacks != null) {
                                 onTroopDone.onAttackDone(t, target, damagePacks);
                             }
                         });
-                    } else {
+                        if (entered) {
+                            it.remove();
+                        }
+                    } else if (!t.isWaiting()) {
                         it.remove();
                     }
                 }
             }
         } while (movingTroops.size() > 0);
+
+        influenceMap.refresh();
     }
 
     public void addTroop(Troop t) {
         troops.add(t);
+        pathCache.invalidate(t.getLocation());
+        influenceMap.updateTroop(t);
+    }
+
+    void onTroopMoved(Troop t, Point from, Point to) {
+        pathCache.onTroopMoved(t, from, to);
+        influenceMap.updateTroop(t);
+    }
+
+    void onTroopDamaged(Troop t) {
+        influenceMap.updateTroop(t);
+    }
+
+    void onArchitectureChanged(Architecture a) {
+        pathCache.invalidate(a.getLocations());
+        travelCostMatrix.invalidate(a.getLocations());
+        influenceMap.updateArchitecture(a);
     }
 
     public enum Season {
@@ -397,7 +726,7 @@ public class GameScenario {
         throw new IllegalStateException("Unexpected month: " + date.getMonth().getValue());
     }
 
-    public void save(FileHandle out) {
+    static FileHandle prepareSaveDirectory(FileHandle out) {
         FileHandle result = out;
         if (result == null) {
             FileHandle root = Gdx.files.external(SAVE_PATH);
@@ -410,8 +739,135 @@ public class GameScenario {
         }
 
         result.emptyDirectory();
+        return result;
+    }
+
+    /**
+     * Save the game into the directory, or a new one under SAVE_PATH if it is null, in the binary format, and wait
+     * until it is written. Saving again into the directory the game was last saved to or loaded from writes only
+     * what changed since, as a delta chained to the base there.
+     */
+    public void save(FileHandle out) {
+        SaveSnapshot snapshot = takeSnapshot(out);
+        try {
+            saveWriter.submit(() -> writeSnapshot(snapshot, (done, total) -> {})).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FileWriteException(snapshot.getDirectory() == null ? SAVE_PATH : snapshot.getDirectory().path(),
+                    (Exception) e.getCause());
+        }
+    }
+
+    /**
+     * Take the game as it is now into memory, and write it as save does on the background save writer. The game
+     * must not be changing while this is called, so this is to be called between days. The listener is called on
+     * the save writer thread.
+     */
+    public void saveAsync(FileHandle out, OnSaveProgress listener) {
+        SaveSnapshot snapshot = takeSnapshot(out);
+        saveWriter.execute(() -> {
+            try {
+                writeSnapshot(snapshot, listener::onSaveProgress);
+            } catch (RuntimeException e) {
+                listener.onSaveDone(snapshot.getDirectory(), e);
+                return;
+            }
+            listener.onSaveDone(snapshot.getDirectory(), null);
+        });
+    }
+
+    /**
+     * Wait until every save started so far is written, before reading from the save directory
+     */
+    public static void awaitSaves() {
+        try {
+            saveWriter.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // not thrown by an empty task
+        }
+    }
+
+    private synchronized SaveSnapshot takeSnapshot(FileHandle out) {
+        // while this save is being written, the chain on disk is in flux, so a save taken meanwhile is a full one
+        SaveChain chain = saveChain;
+        saveChain = null;
+        int generation = ++saveGeneration;
+
+        String[] survey = GameSurvey.toCSVRecord(gameSurvey, SAVE_VERSION);
+        byte[] memory = aiMemory.toBytes();
+
+        if (chain != null && chain.canAppend(out)) {
+            int sequence = chain.nextSequence();
+            SaveWriter bin = new SaveWriter(SAVE_VERSION, chain.getHashes());
+            bin.putChain(chain.getChainId(), sequence);
+
+            writeGameState(bin);
+
+            return SaveSnapshot.delta(generation, out, bin, chain, sequence, survey, memory);
+        }
 
-        GameSurvey.toCSV(result, gameSurvey);
+        long chainId = SaveChain.newChainId();
+        SaveWriter bin = new SaveWriter(SAVE_VERSION);
+        bin.putChain(chainId, 0);
+
+        TerrainDetail.toBinary(bin, terrainDetails);
+        GameMap.toBinary(bin, gameMap);
+        ArchitectureKind.toBinary(bin, new GameObjectList<>(architectureKinds, true));
+
+        FacilityKind.toBinary(bin, new GameObjectList<>(facilityKinds, true));
+
+        MilitaryType.toBinary(bin, new GameObjectList<>(militaryTypes, true));
+        MilitaryKind.toBinary(bin, new GameObjectList<>(militaryKinds, true));
+
+        MilitaryTerrain.toBinary(bin, new GameObjectList<>(militaryTerrains, true));
+
+        TroopAnimation.toBinary(bin, new GameObjectList<>(troopAnimations, true));
+
+        writeGameState(bin);
+
+        return SaveSnapshot.full(generation, out, bin, chainId, survey, memory);
+    }
+
+    private void writeSnapshot(SaveSnapshot snapshot, SaveSnapshot.OnStep onStep) {
+        SaveChain chain = snapshot.write(onStep);
+        synchronized (this) {
+            // a later save has taken over the chain
+            if (snapshot.getGeneration() == saveGeneration) {
+                saveChain = chain;
+            }
+        }
+    }
+
+    /**
+     * Everything that may change during a game; the rest is only written to the base of a save
+     */
+    private void writeGameState(SaveWriter bin) {
+        GameData.toBinary(bin, gameData);
+
+        Architecture.toBinary(bin, new GameObjectList<>(architectures, true));
+        Section.toBinary(bin, new GameObjectList<>(sections, true));
+        Faction.toBinary(bin, new GameObjectList<>(factions, true));
+        Person.toBinary(bin, new GameObjectList<>(persons, true));
+        Military.toBinary(bin, new GameObjectList<>(militaries, true));
+        Troop.toBinary(bin, new GameObjectList<>(troops, true));
+
+        Facility.toBinary(bin, new GameObjectList<>(facilities, true));
+    }
+
+    /**
+     * Save the game into the directory, or a new one under SAVE_PATH if it is null, as CSV files that can be edited
+     * and loaded as a scenario
+     */
+    public void exportCSV(FileHandle out) {
+        FileHandle result = prepareSaveDirectory(out);
+
+        GameSurvey.toCSV(result, gameSurvey, CSV_SAVE_VERSION);
 
         TerrainDetail.toCSV(result, terrainDetails);
         GameMap.toCSV(result, gameMap);
@@ -436,6 +892,8 @@ public class GameScenario {
         Troop.toCSV(result, new GameObjectList<>(troops, true));
 
         Facility.toCSV(result, new GameObjectList<>(facilities, true));
+
+        aiMemory.save(result);
     }
 
 }
@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.Point;
 import com.zhsan.common.exception.EmptyFileException;
 import com.zhsan.common.exception.FileReadException;
@@ -10,7 +10,6 @@ import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -48,26 +47,23 @@ public final class GameSurvey {
 
     public static final GameSurvey fromCSV(FileHandle root) {
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
                 GameSurveyBuilder b = new GameSurveyBuilder();
-                b.setTitle(line[0]);
+                b.setTitle(in.getString());
                 b.setStartDate(LocalDate.of(
-                        Integer.parseInt(line[1]),
-                        Integer.parseInt(line[2]),
-                        Integer.parseInt(line[3])));
-                b.setSaveDate(LocalDateTime.parse(line[4], SAVE_DATE_FORMAT));
-                b.setMessage(line[5]);
-                b.setInitialPosition(Point.fromCSV(line[6]));
-                b.setDescription(line[7]);
-                if (line.length >= 9) {
-                    b.setResourcePackName(line[8]);
-                    b.setVersion(Integer.parseInt(line[9]));
+                        in.getInt(),
+                        in.getInt(),
+                        in.getInt()));
+                b.setSaveDate(LocalDateTime.parse(in.getString(), SAVE_DATE_FORMAT));
+                b.setMessage(in.getString());
+                b.setInitialPosition(in.getPoint());
+                b.setDescription(in.getString());
+                if (in.hasMoreFields()) {
+                    b.setResourcePackName(in.getString());
+                    b.setVersion(in.getInt());
                 } else {
                     b.setResourcePackName("");
                     b.setVersion(1);
@@ -82,22 +78,33 @@ public final class GameSurvey {
         throw new FileReadException(f.path(), new EmptyFileException());
     }
 
-    public static final void toCSV(FileHandle root, GameSurvey gameSurvey) {
+    public static final void toCSV(FileHandle root, GameSurvey gameSurvey, int version) {
+        writeCSV(root, toCSVRecord(gameSurvey, version));
+    }
+
+    /**
+     * The record of the survey as saved now, to be written later by writeCSV
+     */
+    static String[] toCSVRecord(GameSurvey gameSurvey, int version) {
+        return new String[]{
+                gameSurvey.title,
+                String.valueOf(gameSurvey.startDate.getYear()),
+                String.valueOf(gameSurvey.startDate.getMonth().getValue()),
+                String.valueOf(gameSurvey.startDate.getDayOfMonth()),
+                SAVE_DATE_FORMAT.format(LocalDateTime.now()),
+                gameSurvey.message,
+                gameSurvey.cameraPosition.toCSV(),
+                gameSurvey.description,
+                gameSurvey.resourcePackName,
+                String.valueOf(version)
+        };
+    }
+
+    static void writeCSV(FileHandle root, String[] record) {
         FileHandle f = root.child(SAVE_FILE);
         try (CSVWriter writer = new CSVWriter(f.writer(false, "UTF-8"))) {
             writer.writeNext(GlobalStrings.getString(GlobalStrings.Keys.GAME_SURVEY_SAVE_HEADER).split(","));
-            writer.writeNext(new String[]{
-                    gameSurvey.title,
-                    String.valueOf(gameSurvey.startDate.getYear()),
-                    String.valueOf(gameSurvey.startDate.getMonth().getValue()),
-                    String.valueOf(gameSurvey.startDate.getDayOfMonth()),
-                    SAVE_DATE_FORMAT.format(LocalDateTime.now()),
-                    gameSurvey.message,
-                    gameSurvey.cameraPosition.toCSV(),
-                    gameSurvey.description,
-                    gameSurvey.resourcePackName,
-                    String.valueOf(GameScenario.SAVE_VERSION)
-            });
+            writer.writeNext(record);
         } catch (IOException e) {
             throw new FileWriteException(f.path(), e);
         }
@@ -0,0 +1,7 @@
+package com.zhsan.gameobject;
+
+public interface HasFaction {
+
+    public Faction getBelongedFaction();
+
+}
@@ -0,0 +1,198 @@
+package com.zhsan.gameobject;
+
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.common.Point;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-faction strength over the map at a coarse resolution of influenceCellSize tiles per cell. Every troop spreads
+ * its offense, and every architecture its endurance, over the cells within influenceRadius of it, falling off
+ * linearly with distance. The threat to a faction at a cell is the strength of all other factions there.
+ *
+ * The grids are kept up to date incrementally: only the contribution of the troop or architecture that moved,
+ * spawned, died, was damaged or changed owner is taken back and stamped again. The grids add up in double, so
+ * that years of taking back and stamping again leave no rounding error that would show. Queries read the grids
+ * without locking and may see a value that is being updated.
+ */
+public class InfluenceMap {
+
+    private static final class Contribution {
+        private final int faction;
+        private final int cell;
+        private final float power;
+
+        private Contribution(int faction, int cell, float power) {
+            this.faction = faction;
+            this.cell = cell;
+            this.power = power;
+        }
+    }
+
+    private final GameScenario scenario;
+
+    private final int cellSize;
+    private final int width, height;
+    private final int radius;
+    private final float[] falloff;
+
+    private final Map<Integer, double[]> strength = new ConcurrentHashMap<>();
+    private final double[] total;
+
+    private final Map<Object, Contribution> contributions = new IdentityHashMap<>();
+
+    public InfluenceMap(GameScenario scenario, int mapWidth, int mapHeight) {
+        this.scenario = scenario;
+        this.cellSize = Math.max(1, GlobalVariables.influenceCellSize);
+        this.width = (mapWidth + cellSize - 1) / cellSize;
+        this.height = (mapHeight + cellSize - 1) / cellSize;
+        this.radius = Math.max(0, GlobalVariables.influenceRadius);
+        this.total = new double[width * height];
+
+        this.falloff = new float[radius + 1];
+        for (int d = 0; d <= radius; ++d) {
+            falloff[d] = (float) (radius + 1 - d) / (radius + 1);
+        }
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Strength of the faction at the cell containing the given map location
+     */
+    public float getStrength(Faction f, Point p) {
+        int cell = cellOf(p);
+        if (f == null || cell < 0) return 0;
+        double[] grid = strength.get(f.getId());
+        return grid == null ? 0 : (float) grid[cell];
+    }
+
+    /**
+     * Strength of all factions other than the given one at the cell containing the given map location
+     */
+    public float getThreat(Faction f, Point p) {
+        int cell = cellOf(p);
+        if (cell < 0) return 0;
+        double[] grid = f == null ? null : strength.get(f.getId());
+        return (float) Math.max(0, total[cell] - (grid == null ? 0 : grid[cell]));
+    }
+
+    /**
+     * Strength of the faction at the cell (x, y), in cell coordinates
+     */
+    public float getCellStrength(Faction f, int x, int y) {
+        if (f == null || x < 0 || y < 0 || x >= width || y >= height) return 0;
+        double[] grid = strength.get(f.getId());
+        return grid == null ? 0 : (float) grid[y * width + x];
+    }
+
+    /**
+     * Strength of all factions at the cell (x, y), in cell coordinates
+     */
+    public float getCellTotal(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return 0;
+        return (float) total[y * width + x];
+    }
+
+    /**
+     * Stamp every troop and architecture of the scenario again from scratch
+     */
+    public synchronized void rebuild() {
+        contributions.clear();
+        strength.clear();
+        Arrays.fill(total, 0);
+        scenario.getTroops().forEach(this::updateTroop);
+        scenario.getArchitectures().forEach(this::updateArchitecture);
+    }
+
+    /**
+     * Take in the changes to everything that is not reported as an event, such as morale and endurance
+     */
+    public synchronized void refresh() {
+        scenario.getTroops().forEach(this::updateTroop);
+        scenario.getArchitectures().forEach(this::updateArchitecture);
+    }
+
+    public synchronized void updateTroop(Troop t) {
+        if (t.isDestroyed()) {
+            remove(t);
+        } else {
+            update(t, t.getBelongedFaction(), t.getLocation(), t.getOffense());
+        }
+    }
+
+    public synchronized void removeTroop(Troop t) {
+        remove(t);
+    }
+
+    public synchronized void updateArchitecture(Architecture a) {
+        update(a, a.getBelongedFaction(), a.getLocation(), a.getEndurance());
+    }
+
+    private void update(Object o, Faction f, Point p, float power) {
+        int cell = cellOf(p);
+        if (f == null || cell < 0 || power <= 0) {
+            remove(o);
+            return;
+        }
+
+        Contribution old = contributions.get(o);
+        if (old != null && old.faction == f.getId() && old.cell == cell && old.power == power) {
+            return;
+        }
+        if (old != null) {
+            stamp(old, -1);
+        }
+        Contribution c = new Contribution(f.getId(), cell, power);
+        contributions.put(o, c);
+        stamp(c, 1);
+    }
+
+    private void remove(Object o) {
+        Contribution old = contributions.remove(o);
+        if (old != null) {
+            stamp(old, -1);
+        }
+    }
+
+    private void stamp(Contribution c, int sign) {
+        double[] grid = strength.computeIfAbsent(c.faction, id -> new double[width * height]);
+        int cx = c.cell % width;
+        int cy = c.cell / width;
+        for (int y = Math.max(0, cy - radius); y <= Math.min(height - 1, cy + radius); ++y) {
+            for (int x = Math.max(0, cx - radius); x <= Math.min(width - 1, cx + radius); ++x) {
+                double v = sign * (double) c.power * falloff[Math.max(Math.abs(x - cx), Math.abs(y - cy))];
+                int i = y * width + x;
+                grid[i] = clean(grid[i] + v);
+                total[i] = clean(total[i] + v);
+            }
+        }
+    }
+
+    // taking back exactly what was added may leave a little rounding error behind
+    private static double clean(double v) {
+        return Math.abs(v) < 1e-3 ? 0 : v;
+    }
+
+    private int cellOf(Point p) {
+        if (p == null || p.x < 0 || p.y < 0) return -1;
+        int x = p.x / cellSize;
+        int y = p.y / cellSize;
+        if (x >= width || y >= height) return -1;
+        return y * width + x;
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Pair;
 import com.zhsan.common.Point;
@@ -10,10 +10,10 @@ import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import com.zhsan.gamecomponents.common.XmlHelper;
+import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -21,7 +21,7 @@ import java.util.stream.Collectors;
 /**
  * Created by Peter on 19/7/2015.
  */
-public class Military extends GameObject {
+public class Military extends GameObject implements HasFaction {
 
     public static final String SAVE_FILE = "Military.csv";
 
@@ -63,12 +63,26 @@ public class Military extends GameObject {
             return -1;
         }
 
+        int getLocationType() {
+            if (architecture != null) {
+                return ARCHITECTURE;
+            }
+            if (troop != null) {
+                return TROOP;
+            }
+            assert false;
+            return -1;
+        }
+
         public static LocationType fromCSV(String type, String id, GameScenario scen) {
-            int typeInt = Integer.parseInt(type);
-            if (typeInt == ARCHITECTURE) {
-                return new LocationType(scen.getArchitectures().get(Integer.parseInt(id)));
-            } else if (typeInt == TROOP) {
-                return new LocationType(scen.getTroops().get(Integer.parseInt(id)));
+            return fromIds(Integer.parseInt(type), Integer.parseInt(id), scen);
+        }
+
+        static LocationType fromIds(int type, int id, GameScenario scen) {
+            if (type == ARCHITECTURE) {
+                return new LocationType(scen.getArchitectures().get(id));
+            } else if (type == TROOP) {
+                return new LocationType(scen.getTroops().get(id));
             } else {
                 assert false;
                 return null;
@@ -110,23 +124,20 @@ public class Military extends GameObject {
         GameObjectList<Military> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Military data = new Military(Integer.parseInt(line[0]), scen);
-                data.setAiTags(line[1]);
-                data.name = line[2];
-                data.kind = scen.getMilitaryKinds().get(Integer.parseInt(line[3]));
-                data.location = LocationType.fromCSV(line[4], line[5], scen);
-                data.quantity = Integer.parseInt(line[6]);
-                data.morale = Integer.parseInt(line[7]);
-                data.combativity = Integer.parseInt(line[8]);
-                data.leader = scen.getPerson(Integer.parseInt(line[9]));
-                data.persons = scen.getPersons().getItemsFromCSV(line[10]);
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Military data = new Military(in.getInt(), scen);
+                data.setAiTags(in.getString());
+                data.name = in.getString();
+                data.kind = scen.getMilitaryKinds().get(in.getInt());
+                data.location = LocationType.fromIds(in.getInt(), in.getInt(), scen);
+                data.quantity = in.getInt();
+                data.morale = in.getInt();
+                data.combativity = in.getInt();
+                data.leader = scen.getPerson(in.getInt());
+                data.persons = scen.getPersons().getItems(in.getInts());
 
                 result.add(data);
             }
@@ -162,6 +173,48 @@ public class Military extends GameObject {
         }
     }
 
+    static GameObjectList<Military> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Military> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Military data = new Military(in.getInt(), scen);
+            data.setAiTags(in.getString());
+            data.name = in.getString();
+            data.kind = scen.getMilitaryKinds().get(in.getInt());
+            data.location = LocationType.fromIds(in.getInt(), in.getInt(), scen);
+            data.quantity = in.getInt();
+            data.morale = in.getInt();
+            data.combativity = in.getInt();
+            data.leader = scen.getPerson(in.getInt());
+            data.persons = in.getObjects(scen.getPersons());
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Military> types) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Military detail : types) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.getName());
+            out.putInt(detail.kind.getId());
+            out.putInt(detail.location.getLocationType());
+            out.putInt(detail.location.getLocationId());
+            out.putInt(detail.quantity);
+            out.putInt(detail.morale);
+            out.putInt(detail.combativity);
+            out.putInt(detail.leader == null ? -1 : detail.leader.getId());
+            out.putIds(detail.persons);
+        }
+        out.endTable();
+    }
+
     public Military(int id, GameScenario scen) {
         super(id);
         this.scenario = scen;
@@ -196,18 +249,22 @@ public class Military extends GameObject {
         return location.get();
     }
 
+    @LuaAI.ExportToLua
     public int getQuantity() {
         return quantity;
     }
 
+    @LuaAI.ExportToLua
     public float getUnitCount() {
         return (float) quantity / getKind().getUnitQuantity();
     }
 
+    @LuaAI.ExportToLua
     public int getMorale() {
         return morale;
     }
 
+    @LuaAI.ExportToLua
     public int getCombativity() {
         return combativity;
     }
@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
@@ -10,7 +10,6 @@ import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 19/7/2015.
@@ -62,31 +61,28 @@ public final class MilitaryKind extends GameObject {
         GameObjectList<MilitaryKind> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                MilitaryKind kind = new MilitaryKindBuilder().setId(Integer.parseInt(line[0]))
-                        .setAitag(line[1])
-                        .setName(line[2])
-                        .setType(scen.getMilitaryTypes().get(Integer.parseInt(line[3])))
-                        .setDescription(line[4])
-                        .setCanOnlyCreateAtArchitecture(Boolean.parseBoolean(line[5]))
-                        .setCost(Integer.parseInt(line[6]))
-                        .setTransportCost(Float.parseFloat(line[7]))
-                        .setQuantity(Integer.parseInt(line[8]))
-                        .setUnitQuantity(Integer.parseInt(line[9]))
-                        .setMovability(Integer.parseInt(line[10]))
-                        .setOffense(Integer.parseInt(line[11]))
-                        .setDefense(Integer.parseInt(line[12]))
-                        .setOffensePerUnit(Integer.parseInt(line[13]))
-                        .setDefensePerUnit(Integer.parseInt(line[14]))
-                        .setRangeLo(Integer.parseInt(line[15]))
-                        .setRangeHi(Integer.parseInt(line[16]))
-                        .setArchitectureOffense(Float.parseFloat(line[17]))
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                MilitaryKind kind = new MilitaryKindBuilder().setId(in.getInt())
+                        .setAitag(in.getString())
+                        .setName(in.getString())
+                        .setType(scen.getMilitaryTypes().get(in.getInt()))
+                        .setDescription(in.getString())
+                        .setCanOnlyCreateAtArchitecture(in.getBoolean())
+                        .setCost(in.getInt())
+                        .setTransportCost(in.getFloat())
+                        .setQuantity(in.getInt())
+                        .setUnitQuantity(in.getInt())
+                        .setMovability(in.getInt())
+                        .setOffense(in.getInt())
+                        .setDefense(in.getInt())
+                        .setOffensePerUnit(in.getInt())
+                        .setDefensePerUnit(in.getInt())
+                        .setRangeLo(in.getInt())
+                        .setRangeHi(in.getInt())
+                        .setArchitectureOffense(in.getFloat())
                         .setScenario(scen)
                         .createMilitaryKind();
 
@@ -130,6 +126,64 @@ public final class MilitaryKind extends GameObject {
         }
     }
 
+    static GameObjectList<MilitaryKind> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<MilitaryKind> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            MilitaryKind kind = new MilitaryKindBuilder().setId(in.getInt())
+                    .setAitag(in.getString())
+                    .setName(in.getString())
+                    .setType(scen.getMilitaryTypes().get(in.getInt()))
+                    .setDescription(in.getString())
+                    .setCanOnlyCreateAtArchitecture(in.getBoolean())
+                    .setCost(in.getInt())
+                    .setTransportCost(in.getFloat())
+                    .setQuantity(in.getInt())
+                    .setUnitQuantity(in.getInt())
+                    .setMovability(in.getInt())
+                    .setOffense(in.getInt())
+                    .setDefense(in.getInt())
+                    .setOffensePerUnit(in.getInt())
+                    .setDefensePerUnit(in.getInt())
+                    .setRangeLo(in.getInt())
+                    .setRangeHi(in.getInt())
+                    .setArchitectureOffense(in.getFloat())
+                    .setScenario(scen)
+                    .createMilitaryKind();
+            result.add(kind);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<MilitaryKind> kinds) {
+        out.beginTable(SAVE_FILE);
+        for (MilitaryKind detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.name);
+            out.putInt(detail.type.getId());
+            out.putString(detail.description);
+            out.putBoolean(detail.canOnlyCreateAtArchitecture);
+            out.putInt(detail.cost);
+            out.putFloat(detail.transportCost);
+            out.putInt(detail.quantity);
+            out.putInt(detail.unitQuantity);
+            out.putInt(detail.movability);
+            out.putInt(detail.offense);
+            out.putInt(detail.defense);
+            out.putInt(detail.offensePerUnit);
+            out.putInt(detail.defensePerUnit);
+            out.putInt(detail.rangeLo);
+            out.putInt(detail.rangeHi);
+            out.putFloat(detail.architectureOffense);
+        }
+        out.endTable();
+    }
+
     @Override
     @LuaAI.ExportToLua
     public String getName() {
@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 11/8/2015.
@@ -39,21 +38,18 @@ public class MilitaryTerrain extends GameObject {
         GameObjectList<MilitaryTerrain> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                int kindId = Integer.parseInt(line[0]);
-                int terrainId = Integer.parseInt(line[1]);
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                int kindId = in.getInt();
+                int terrainId = in.getInt();
                 MilitaryTerrain kind = new MilitaryTerrainBuilder()
                         .setId(getId(kindId, terrainId))
                         .setKind(scen.getMilitaryKinds().get(kindId))
                         .setTerrain(scen.getTerrainDetails().get(terrainId))
-                        .setAdaptability(Float.parseFloat(line[2]))
-                        .setMultiple(Float.parseFloat(line[3]))
+                        .setAdaptability(in.getFloat())
+                        .setMultiple(in.getFloat())
                         .createMilitaryTerrain();
 
                 result.add(kind);
@@ -83,6 +79,39 @@ public class MilitaryTerrain extends GameObject {
 
     }
 
+    static GameObjectList<MilitaryTerrain> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<MilitaryTerrain> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            int kindId = in.getInt();
+            int terrainId = in.getInt();
+            MilitaryTerrain kind = new MilitaryTerrainBuilder()
+                    .setId(getId(kindId, terrainId))
+                    .setKind(scen.getMilitaryKinds().get(kindId))
+                    .setTerrain(scen.getTerrainDetails().get(terrainId))
+                    .setAdaptability(in.getFloat())
+                    .setMultiple(in.getFloat())
+                    .createMilitaryTerrain();
+            result.add(kind);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<MilitaryTerrain> kinds) {
+        out.beginTable(SAVE_FILE);
+        for (MilitaryTerrain detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.kind.getId());
+            out.putInt(detail.terrain.getId());
+            out.putFloat(detail.adaptability);
+            out.putFloat(detail.multiple);
+        }
+        out.endTable();
+    }
+
     public MilitaryKind getKind() {
         return kind;
     }
@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 19/7/2015.
@@ -30,16 +29,13 @@ public final class MilitaryType extends GameObject {
         GameObjectList<MilitaryType> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                MilitaryType type = new MilitaryTypeBuilder().setId(Integer.parseInt(line[0]))
-                        .setAitag(line[1])
-                        .setName(line[2])
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                MilitaryType type = new MilitaryTypeBuilder().setId(in.getInt())
+                        .setAitag(in.getString())
+                        .setName(in.getString())
                         .createMilitaryType();
 
                 result.add(type);
@@ -67,6 +63,33 @@ public final class MilitaryType extends GameObject {
         }
     }
 
+    static GameObjectList<MilitaryType> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<MilitaryType> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            MilitaryType type = new MilitaryTypeBuilder().setId(in.getInt())
+                    .setAitag(in.getString())
+                    .setName(in.getString())
+                    .createMilitaryType();
+            result.add(type);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<MilitaryType> types) {
+        out.beginTable(SAVE_FILE);
+        for (MilitaryType detail : types) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.getName());
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return name;
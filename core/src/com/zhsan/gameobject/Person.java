@@ -1,24 +1,24 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Pair;
 import com.zhsan.common.Point;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
+import com.zhsan.gameobject.pathfinding.TravelCostMatrix;
 import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 24/5/2015.
  */
-public class Person extends GameObject {
+public class Person extends GameObject implements HasFaction {
 
     public static final String SAVE_FILE = "Person.csv";
 
@@ -93,15 +93,28 @@ public class Person extends GameObject {
             return -1;
         }
 
+        int getLocationType() {
+            if (architecture != null) {
+                return ARCHITECTURE;
+            }
+            if (troop != null) {
+                return TROOP;
+            }
+            return NONE;
+        }
+
         public static LocationType fromCSV(String type, String id, GameScenario scen) {
-            int typeInt = Integer.parseInt(type);
-            switch (typeInt) {
+            return fromIds(Integer.parseInt(type), Integer.parseInt(id), scen);
+        }
+
+        static LocationType fromIds(int type, int id, GameScenario scen) {
+            switch (type) {
                 case NONE:
                     return new LocationType();
                 case ARCHITECTURE:
-                    return new LocationType(scen.getArchitectures().get(Integer.parseInt(id)));
+                    return new LocationType(scen.getArchitectures().get(id));
                 case TROOP:
-                    return new LocationType(scen.getTroops().get(Integer.parseInt(id)));
+                    return new LocationType(scen.getTroops().get(id));
                 default:
                     assert false;
                     return null;
@@ -109,18 +122,7 @@ public class Person extends GameObject {
         }
 
         public Pair<String, String> toCSV() {
-            int type, id;
-            if (architecture != null) {
-                type = ARCHITECTURE;
-                id = architecture.getId();
-            } else if (troop != null) {
-                type = TROOP;
-                id = troop.getId();
-            } else {
-                type = NONE;
-                id = -1;
-            }
-            return new Pair<>(String.valueOf(type), String.valueOf(id));
+            return new Pair<>(String.valueOf(getLocationType()), String.valueOf(getLocationId()));
         }
 
         public static Pair<String, String> nullToCSV() {
@@ -206,28 +208,25 @@ public class Person extends GameObject {
         GameObjectList<Person> result = new GameObjectList<>();
 
         FileHandle f = root.child(Person.SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Person data = new Person(Integer.parseInt(line[0]), scen);
-                data.setAiTags(line[1]);
-                data.portraitId = Integer.parseInt(line[2]);
-                data.surname = line[3];
-                data.givenName = line[4];
-                data.calledName = line[5];
-                data.state = Person.State.fromCSV(line[6]);
-                data.location = LocationType.fromCSV(line[7], line[8], scen);
-                data.movingDays = Integer.parseInt(line[9]);
-                data.strength = Integer.parseInt(line[10]);
-                data.command = Integer.parseInt(line[11]);
-                data.intelligence = Integer.parseInt(line[12]);
-                data.politics = Integer.parseInt(line[13]);
-                data.glamour = Integer.parseInt(line[14]);
-                data.doingWork = Person.DoingWork.fromCSV(line[15]);
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Person data = new Person(in.getInt(), scen);
+                data.setAiTags(in.getString());
+                data.portraitId = in.getInt();
+                data.surname = in.getString();
+                data.givenName = in.getString();
+                data.calledName = in.getString();
+                data.state = Person.State.fromCSV(in.getString());
+                data.location = LocationType.fromIds(in.getInt(), in.getInt(), scen);
+                data.movingDays = in.getInt();
+                data.strength = in.getInt();
+                data.command = in.getInt();
+                data.intelligence = in.getInt();
+                data.politics = in.getInt();
+                data.glamour = in.getInt();
+                data.doingWork = Person.DoingWork.fromCSV(in.getString());
 
                 result.add(data);
             }
@@ -269,6 +268,58 @@ public class Person extends GameObject {
 
     }
 
+    static GameObjectList<Person> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Person> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Person data = new Person(in.getInt(), scen);
+            data.setAiTags(in.getString());
+            data.portraitId = in.getInt();
+            data.surname = in.getString();
+            data.givenName = in.getString();
+            data.calledName = in.getString();
+            data.state = State.values()[in.getInt()];
+            data.location = LocationType.fromIds(in.getInt(), in.getInt(), scen);
+            data.movingDays = in.getInt();
+            data.strength = in.getInt();
+            data.command = in.getInt();
+            data.intelligence = in.getInt();
+            data.politics = in.getInt();
+            data.glamour = in.getInt();
+            data.doingWork = DoingWork.values()[in.getInt()];
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Person> data) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Person d : data) {
+            out.beginRecord();
+            out.putInt(d.getId());
+            out.putString(d.getAiTags());
+            out.putInt(d.portraitId);
+            out.putString(d.surname);
+            out.putString(d.givenName);
+            out.putString(d.calledName);
+            out.putInt(d.state.ordinal());
+            out.putInt(d.location == null ? LocationType.NONE : d.location.getLocationType());
+            out.putInt(d.location == null ? -1 : d.location.getLocationId());
+            out.putInt(d.movingDays);
+            out.putInt(d.strength);
+            out.putInt(d.command);
+            out.putInt(d.intelligence);
+            out.putInt(d.politics);
+            out.putInt(d.glamour);
+            out.putInt(d.doingWork.ordinal());
+        }
+        out.endTable();
+    }
+
 
     @Override
     @LuaAI.ExportToLua
@@ -308,6 +359,7 @@ public class Person extends GameObject {
         return location == null ? null : location.get();
     }
 
+    @LuaAI.ExportToLua
     public int getMovingDays() {
         return movingDays;
     }
@@ -368,6 +420,7 @@ public class Person extends GameObject {
     }
 
     @LuaAI.ExportToLua
+    @LuaAI.AiCommand
     public void setDoingWork(String work) {
         setDoingWork(DoingWork.fromCSV(work));
     }
@@ -427,6 +480,16 @@ public class Person extends GameObject {
         this.location = new LocationType(a);
     }
 
+    public void moveToArchitecture(Architecture from, Architecture a) {
+        int cost = scenario.getTravelCostMatrix().getOnFootCost(from, a);
+        if (cost == TravelCostMatrix.UNKNOWN || cost == TravelCostMatrix.UNREACHABLE) {
+            moveToArchitecture(from.getLocation(), a);
+        } else {
+            this.movingDays = Math.max(1, Math.round(cost / GlobalVariables.personMovingSpeed));
+            this.location = new LocationType(a);
+        }
+    }
+
     public void moveToArchitectureInstantly(Architecture a) {
         this.location = new LocationType(a);
         arriveAtArchitecture(a);
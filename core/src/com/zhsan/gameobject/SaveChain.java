@@ -0,0 +1,105 @@
+package com.zhsan.gameobject;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.zhsan.common.GlobalVariables;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The save directory the game was last saved to or loaded from, and what is needed to append a delta to it: the
+ * chain id shared by its base and deltas, the number of deltas so far, and the record hashes of the state on disk.
+ * A full save is taken instead once the chain holds saveCompactInterval deltas or its deltas have grown to half the
+ * size of the base, which merges the chain into a new base.
+ */
+final class SaveChain {
+
+    private static final String DELTA_FILE = "Delta%d.bin";
+
+    private final File dir;
+    private final long chainId;
+    private final long baseSize;
+    private final long baseModified;
+
+    private int sequence;
+    private long deltaSize;
+    private Map<String, Map<Integer, Long>> hashes;
+
+    private SaveChain(FileHandle dir, long chainId, int sequence, long deltaSize,
+                      Map<String, Map<Integer, Long>> hashes) {
+        this.dir = dir.file().getAbsoluteFile();
+        this.chainId = chainId;
+        this.sequence = sequence;
+        this.deltaSize = deltaSize;
+        this.hashes = hashes;
+
+        File base = dir.child(GameScenario.BINARY_SAVE_FILE).file();
+        this.baseSize = base.length();
+        this.baseModified = base.lastModified();
+    }
+
+    static String getDeltaFile(int sequence) {
+        return String.format(DELTA_FILE, sequence);
+    }
+
+    static long newChainId() {
+        long result;
+        do {
+            result = ThreadLocalRandom.current().nextLong();
+        } while (result == 0);
+        return result;
+    }
+
+    /**
+     * A chain just started by a full save
+     */
+    static SaveChain started(FileHandle dir, long chainId, Map<String, Map<Integer, Long>> hashes) {
+        return new SaveChain(dir, chainId, 0, 0, hashes);
+    }
+
+    /**
+     * The chain a game was loaded from, or null if it cannot be appended to
+     */
+    static SaveChain loaded(FileHandle dir, SaveReader reader, Map<String, Map<Integer, Long>> hashes) {
+        if (reader.getChainId() == 0) {
+            return null;
+        }
+        return new SaveChain(dir, reader.getChainId(), reader.getSequence(), reader.getDeltaSize(), hashes);
+    }
+
+    long getChainId() {
+        return chainId;
+    }
+
+    Map<String, Map<Integer, Long>> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Whether a save into the directory may be a delta to this chain
+     */
+    boolean canAppend(FileHandle out) {
+        if (!GlobalVariables.deltaSaves || out == null || !out.file().getAbsoluteFile().equals(dir)) {
+            return false;
+        }
+        if (sequence >= GlobalVariables.saveCompactInterval || deltaSize * 2 > baseSize) {
+            return false;
+        }
+        // the slot may have been overwritten by another game since
+        File base = new File(dir, GameScenario.BINARY_SAVE_FILE);
+        return base.length() == baseSize && base.lastModified() == baseModified &&
+                !new File(dir, getDeltaFile(sequence + 1)).exists();
+    }
+
+    int nextSequence() {
+        return sequence + 1;
+    }
+
+    void appended(Map<String, Map<Integer, Long>> hashes, long size) {
+        this.sequence++;
+        this.deltaSize += size;
+        this.hashes = hashes;
+    }
+
+}
@@ -0,0 +1,319 @@
+package com.zhsan.gameobject;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.zhsan.common.Point;
+import com.zhsan.common.exception.FileReadException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads a save written by SaveWriter. Each file is read into memory at once; a table is then walked record by
+ * record, each field read in the order it was written. A record may be wider than what the reader asks for, so
+ * fields appended by later versions are skipped.
+ *
+ * A save may be a base file followed by a chain of deltas. A tracked table is then merged by id over the whole
+ * chain, a later record replacing an earlier one and ids listed as removed dropped, before anything is built from
+ * it; any other table is taken from the last file that has it.
+ */
+final class SaveReader {
+
+    static final String CHAIN_TABLE = "Chain";
+    static final String REMOVED_TABLE = "Removed";
+
+    private static final class Table {
+        private final int offset, width, count;
+
+        private Table(int offset, int width, int count) {
+            this.offset = offset;
+            this.width = width;
+            this.count = count;
+        }
+    }
+
+    private static final class Source {
+        private final String path;
+        private final ByteBuffer buffer;
+        private final int version;
+        private final String[] strings;
+        private final int[] listOffsets;
+        private final Map<String, Table> tables;
+        private final long size;
+
+        private Source(String path, ByteBuffer buffer) throws IOException {
+            this.path = path;
+            this.buffer = buffer;
+            this.size = buffer.limit();
+            this.tables = new HashMap<>();
+
+            if (buffer.getInt() != SaveWriter.MAGIC) {
+                throw new IOException("Not a binary save");
+            }
+            version = buffer.getInt();
+            strings = new String[buffer.getInt()];
+            listOffsets = new int[buffer.getInt()];
+            int tableCount = buffer.getInt();
+            buffer.getInt(); // reserved
+
+            for (int i = 0; i < strings.length; ++i) {
+                int length = buffer.getInt();
+                strings[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            for (int i = 0; i < listOffsets.length; ++i) {
+                listOffsets[i] = buffer.position();
+                buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()) * 4);
+            }
+            for (int i = 0; i < tableCount; ++i) {
+                String name = strings[buffer.getInt()];
+                int width = buffer.getInt();
+                int count = buffer.getInt();
+                tables.put(name, new Table(buffer.position(), width, count));
+                buffer.position(buffer.position() + width * count);
+            }
+        }
+
+        private Source(Source other) {
+            this.path = other.path;
+            this.buffer = other.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.version = other.version;
+            this.strings = other.strings;
+            this.listOffsets = other.listOffsets;
+            this.tables = other.tables;
+            this.size = other.size;
+        }
+
+        private static Source read(FileHandle f) {
+            try (FileChannel channel = FileChannel.open(f.file().toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                }
+                buffer.flip();
+                return new Source(f.path(), buffer);
+            } catch (IOException | RuntimeException e) {
+                throw new FileReadException(f.path(), e instanceof IOException ? e : new IOException(e));
+            }
+        }
+
+        private long getChainId() {
+            Table t = tables.get(CHAIN_TABLE);
+            return t == null || t.count == 0 ? 0 : buffer.getLong(t.offset);
+        }
+
+        private int getSequence() {
+            Table t = tables.get(CHAIN_TABLE);
+            return t == null || t.count == 0 ? 0 : buffer.getInt(t.offset + 8);
+        }
+
+        private Set<Integer> getRemoved(String table) {
+            Set<Integer> result = new HashSet<>();
+            Table t = tables.get(REMOVED_TABLE);
+            if (t == null) return result;
+            for (int i = 0; i < t.count; ++i) {
+                int offset = t.offset + i * t.width;
+                if (strings[buffer.getInt(offset)].equals(table)) {
+                    result.add(buffer.getInt(offset + 4));
+                }
+            }
+            return result;
+        }
+    }
+
+    private final List<Source> sources;
+
+    private Source source;
+    // source index in the upper half, offset of the record in the lower
+    private long[] records;
+    private int record;
+
+    private SaveReader(List<Source> sources) {
+        this.sources = sources;
+    }
+
+    static SaveReader read(FileHandle f) {
+        return new SaveReader(Collections.singletonList(Source.read(f)));
+    }
+
+    /**
+     * Read the base file and every delta chained to it in the directory
+     */
+    static SaveReader readChain(FileHandle dir, String baseFile) {
+        List<Source> sources = new ArrayList<>();
+        Source base = Source.read(dir.child(baseFile));
+        sources.add(base);
+
+        long chainId = base.getChainId();
+        if (chainId != 0) {
+            for (int i = 1; ; ++i) {
+                FileHandle f = dir.child(SaveChain.getDeltaFile(i));
+                if (!f.exists()) break;
+                Source delta = Source.read(f);
+                if (delta.getChainId() != chainId || delta.getSequence() != i) break;
+                sources.add(delta);
+            }
+        }
+
+        return new SaveReader(sources);
+    }
+
+    /**
+     * A reader of the same files with a position of its own, so that tables can be read on several threads at once
+     */
+    SaveReader copy() {
+        List<Source> result = new ArrayList<>(sources.size());
+        for (Source s : sources) {
+            result.add(new Source(s));
+        }
+        return new SaveReader(result);
+    }
+
+    int getVersion() {
+        return sources.get(sources.size() - 1).version;
+    }
+
+    long getChainId() {
+        return sources.get(0).getChainId();
+    }
+
+    int getSequence() {
+        return sources.get(sources.size() - 1).getSequence();
+    }
+
+    long getBaseSize() {
+        return sources.get(0).size;
+    }
+
+    long getDeltaSize() {
+        long result = 0;
+        for (int i = 1; i < sources.size(); ++i) {
+            result += sources.get(i).size;
+        }
+        return result;
+    }
+
+    boolean hasTable(String name) {
+        for (Source s : sources) {
+            if (s.tables.containsKey(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move to the table of the given name in the last file that has it, before its first record
+     * @return the number of records in the table
+     */
+    int beginTable(String name) {
+        for (int i = sources.size() - 1; i >= 0; --i) {
+            Table t = sources.get(i).tables.get(name);
+            if (t != null) {
+                records = new long[t.count];
+                for (int j = 0; j < t.count; ++j) {
+                    records[j] = ((long) i << 32) | (t.offset + j * t.width);
+                }
+                record = -1;
+                return records.length;
+            }
+        }
+        throw new FileReadException(sources.get(0).path, new IOException("Missing table " + name));
+    }
+
+    /**
+     * Move to the table of the given name, merged by id over the whole chain, before its first record
+     * @return the number of records in the table
+     */
+    int beginTrackedTable(String name) {
+        if (sources.size() == 1) {
+            return beginTable(name);
+        }
+
+        Map<Integer, Long> merged = new TreeMap<>();
+        boolean found = false;
+        for (int i = 0; i < sources.size(); ++i) {
+            Source s = sources.get(i);
+            merged.keySet().removeAll(s.getRemoved(name));
+            Table t = s.tables.get(name);
+            if (t == null) continue;
+            found = true;
+            for (int j = 0; j < t.count; ++j) {
+                int offset = t.offset + j * t.width;
+                merged.put(s.buffer.getInt(offset), ((long) i << 32) | offset);
+            }
+        }
+        if (!found) {
+            throw new FileReadException(sources.get(0).path, new IOException("Missing table " + name));
+        }
+
+        records = new long[merged.size()];
+        int n = 0;
+        for (long r : merged.values()) {
+            records[n++] = r;
+        }
+        record = -1;
+        return records.length;
+    }
+
+    void nextRecord() {
+        record++;
+        source = sources.get((int) (records[record] >>> 32));
+        source.buffer.position((int) records[record]);
+    }
+
+    int getInt() {
+        return source.buffer.getInt();
+    }
+
+    long getLong() {
+        return source.buffer.getLong();
+    }
+
+    float getFloat() {
+        return source.buffer.getFloat();
+    }
+
+    boolean getBoolean() {
+        return source.buffer.get() != 0;
+    }
+
+    String getString() {
+        int id = source.buffer.getInt();
+        return id < 0 ? null : source.strings[id];
+    }
+
+    int[] getInts() {
+        ByteBuffer buffer = source.buffer;
+        int offset = source.listOffsets[buffer.getInt()];
+        int[] result = new int[buffer.getInt(offset)];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = buffer.getInt(offset + 4 + i * 4);
+        }
+        return result;
+    }
+
+    Point getPoint() {
+        int x = getInt();
+        int y = getInt();
+        return x < 0 && y < 0 ? null : new Point(x, y);
+    }
+
+    List<Point> getPoints() {
+        int[] values = getInts();
+        List<Point> result = new ArrayList<>(values.length / 2);
+        for (int i = 0; i + 1 < values.length; i += 2) {
+            result.add(new Point(values[i], values[i + 1]));
+        }
+        return result;
+    }
+
+    <T extends GameObject> GameObjectList<T> getObjects(GameObjectList<T> from) {
+        return from.getItems(getInts());
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.zhsan.gameobject;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.zhsan.lua.AiMemory;
+
+/**
+ * A save taken in memory: the binary save already built by SaveWriter, the game survey record and the AI memory
+ * serialized, so that nothing of the game is read any more once it is taken. Writing it out only touches the disk,
+ * and may happen on another thread while the game goes on.
+ */
+final class SaveSnapshot {
+
+    interface OnStep {
+        public void onStep(int done, int total);
+    }
+
+    private final int generation;
+    private final FileHandle out;
+    private final SaveWriter bin;
+    private final String[] survey;
+    private final byte[] aiMemory;
+
+    // a full save starts a new chain; a delta is appended to an existing one
+    private final long chainId;
+    private final SaveChain chain;
+    private final int sequence;
+
+    private volatile FileHandle directory;
+
+    private SaveSnapshot(int generation, FileHandle out, SaveWriter bin, String[] survey, byte[] aiMemory,
+                         long chainId, SaveChain chain, int sequence) {
+        this.generation = generation;
+        this.out = out;
+        this.bin = bin;
+        this.survey = survey;
+        this.aiMemory = aiMemory;
+        this.chainId = chainId;
+        this.chain = chain;
+        this.sequence = sequence;
+        this.directory = out;
+    }
+
+    static SaveSnapshot full(int generation, FileHandle out, SaveWriter bin, long chainId, String[] survey,
+                             byte[] aiMemory) {
+        return new SaveSnapshot(generation, out, bin, survey, aiMemory, chainId, null, 0);
+    }
+
+    static SaveSnapshot delta(int generation, FileHandle out, SaveWriter bin, SaveChain chain, int sequence,
+                              String[] survey, byte[] aiMemory) {
+        return new SaveSnapshot(generation, out, bin, survey, aiMemory, chain.getChainId(), chain, sequence);
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The directory saved into, which is only known for a new save once the write has started
+     */
+    FileHandle getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Write the save to disk
+     * @return the chain the directory holds afterwards
+     */
+    SaveChain write(OnStep onStep) {
+        if (chain == null) {
+            int total = 4;
+            FileHandle result = GameScenario.prepareSaveDirectory(out);
+            directory = result;
+            onStep.onStep(1, total);
+
+            bin.write(result.child(GameScenario.BINARY_SAVE_FILE));
+            onStep.onStep(2, total);
+
+            GameSurvey.writeCSV(result, survey);
+            onStep.onStep(3, total);
+
+            AiMemory.write(result, aiMemory);
+            onStep.onStep(4, total);
+
+            return SaveChain.started(result, chainId, bin.getHashes());
+        } else {
+            int total = 3;
+            FileHandle f = out.child(SaveChain.getDeltaFile(sequence));
+            bin.write(f);
+            onStep.onStep(1, total);
+
+            GameSurvey.writeCSV(out, survey);
+            onStep.onStep(2, total);
+
+            AiMemory.write(out, aiMemory);
+            onStep.onStep(3, total);
+
+            chain.appended(bin.getHashes(), f.length());
+            return chain;
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+package com.zhsan.gameobject;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.zhsan.common.Point;
+import com.zhsan.common.exception.FileWriteException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a binary save in memory and writes it out with a single gathering write. The file holds a header, a table
+ * of every distinct string, a pool of integer lists, and then one table per kind of game object with fixed-width
+ * records: strings and lists are stored in the records as indices into the string table and the list pool.
+ * Tables are named after the CSV files they replace.
+ *
+ * The records of a tracked table start with the id of their game object, and a hash of each record's content is
+ * kept. Given the hashes of the previous save, the writer makes a delta instead: a tracked record whose hash did
+ * not change is dropped, together with any string or list only it added, and the ids that are gone are listed in
+ * the Removed table.
+ */
+final class SaveWriter {
+
+    static final int MAGIC = 0x5A485342; // "ZHSB"
+
+    private final int version;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    private ByteBuffer lists = allocate(4096);
+    private int listCount;
+
+    private ByteBuffer tables = allocate(65536);
+    private int tableCount;
+
+    private int tableStart = -1, tableCountPos, tableWidthPos;
+    private int recordStart = -1, recordWidth = -1, recordCount;
+
+    private final Map<String, Map<Integer, Long>> previous;
+    private final Map<String, Map<Integer, Long>> hashes = new HashMap<>();
+    private final List<String> removedTables = new ArrayList<>();
+    private final List<Integer> removedIds = new ArrayList<>();
+
+    private Map<Integer, Long> tableHashes;
+    private long hash;
+    private int stringsMark, listsMark, listCountMark;
+
+    SaveWriter(int version) {
+        this(version, null);
+    }
+
+    /**
+     * @param previous hashes of the tracked records in the save this one is a delta to, or null for a full save
+     */
+    SaveWriter(int version, Map<String, Map<Integer, Long>> previous) {
+        this.version = version;
+        this.previous = previous;
+    }
+
+    boolean isDelta() {
+        return previous != null;
+    }
+
+    /**
+     * Hashes of the tracked records of this save, by table and id, for the next delta
+     */
+    Map<String, Map<Integer, Long>> getHashes() {
+        return hashes;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer b, int more) {
+        if (b.remaining() >= more) return b;
+        ByteBuffer result = allocate(Math.max(b.capacity() * 2, b.position() + more));
+        b.flip();
+        result.put(b);
+        return result;
+    }
+
+    void beginTable(String name) {
+        if (tableStart >= 0) {
+            throw new IllegalStateException("Table not ended before " + name);
+        }
+        tables = ensure(tables, 12);
+        tableStart = tables.position();
+        tables.putInt(string(name));
+        tableWidthPos = tables.position();
+        tables.putInt(0);
+        tableCountPos = tables.position();
+        tables.putInt(0);
+        recordWidth = -1;
+        recordCount = 0;
+        tableHashes = null;
+    }
+
+    void beginTrackedTable(String name) {
+        beginTable(name);
+        tableHashes = new HashMap<>();
+        hashes.put(name, tableHashes);
+    }
+
+    void beginRecord() {
+        endRecord();
+        recordStart = tables.position();
+        recordCount++;
+        hash = 0xcbf29ce484222325L;
+        stringsMark = strings.size();
+        listsMark = lists.position();
+        listCountMark = listCount;
+    }
+
+    private void endRecord() {
+        if (recordStart < 0) return;
+        if (tableHashes != null) {
+            int id = tables.getInt(recordStart);
+            tableHashes.put(id, hash);
+            if (previous != null && previous.containsKey(currentTable()) &&
+                    Long.valueOf(hash).equals(previous.get(currentTable()).get(id))) {
+                discardRecord();
+                return;
+            }
+        }
+        int width = tables.position() - recordStart;
+        if (recordWidth < 0) {
+            recordWidth = width;
+        } else if (width != recordWidth) {
+            throw new IllegalStateException("Record of " + width + " bytes in a table of " + recordWidth);
+        }
+        recordStart = -1;
+    }
+
+    private void discardRecord() {
+        tables.position(recordStart);
+        recordStart = -1;
+        recordCount--;
+        while (strings.size() > stringsMark) {
+            stringIds.remove(strings.remove(strings.size() - 1));
+        }
+        lists.position(listsMark);
+        listCount = listCountMark;
+    }
+
+    private String currentTable() {
+        return strings.get(tables.getInt(tableStart));
+    }
+
+    void endTable() {
+        endRecord();
+        tables.putInt(tableWidthPos, Math.max(recordWidth, 0));
+        tables.putInt(tableCountPos, recordCount);
+        if (tableHashes != null && previous != null && previous.containsKey(currentTable())) {
+            for (Integer id : previous.get(currentTable()).keySet()) {
+                if (!tableHashes.containsKey(id)) {
+                    removedTables.add(currentTable());
+                    removedIds.add(id);
+                }
+            }
+        }
+        tableStart = -1;
+        tableHashes = null;
+        tableCount++;
+    }
+
+    private void mix(long v) {
+        hash = (hash ^ v) * 0x100000001b3L;
+    }
+
+    void putInt(int v) {
+        tables = ensure(tables, 4);
+        tables.putInt(v);
+        mix(v);
+    }
+
+    void putLong(long v) {
+        tables = ensure(tables, 8);
+        tables.putLong(v);
+        mix(v);
+    }
+
+    void putFloat(float v) {
+        tables = ensure(tables, 4);
+        tables.putFloat(v);
+        mix(Float.floatToRawIntBits(v));
+    }
+
+    void putBoolean(boolean v) {
+        tables = ensure(tables, 1);
+        tables.put((byte) (v ? 1 : 0));
+        mix(v ? 1 : 0);
+    }
+
+    void putString(String s) {
+        tables = ensure(tables, 4);
+        tables.putInt(s == null ? -1 : string(s));
+        mix(s == null ? -1 : s.length());
+        if (s != null) {
+            for (int i = 0; i < s.length(); ++i) {
+                mix(s.charAt(i));
+            }
+        }
+    }
+
+    void putInts(int[] values) {
+        lists = ensure(lists, 4 + values.length * 4);
+        lists.putInt(values.length);
+        mix(values.length);
+        for (int v : values) {
+            lists.putInt(v);
+            mix(v);
+        }
+        tables = ensure(tables, 4);
+        tables.putInt(listCount++);
+    }
+
+    void putPoint(Point p) {
+        putInt(p == null ? -1 : p.x);
+        putInt(p == null ? -1 : p.y);
+    }
+
+    void putPoints(List<Point> points) {
+        int[] values = new int[points.size() * 2];
+        for (int i = 0; i < points.size(); ++i) {
+            values[i * 2] = points.get(i).x;
+            values[i * 2 + 1] = points.get(i).y;
+        }
+        putInts(values);
+    }
+
+    void putIds(GameObjectList<?> objects) {
+        putInts(BulkQuery.ids(objects.getAll()));
+    }
+
+    private int string(String s) {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * Mark the save as link number sequence of a chain, the base being 0
+     */
+    void putChain(long chainId, int sequence) {
+        beginTable(SaveReader.CHAIN_TABLE);
+        beginRecord();
+        putLong(chainId);
+        putInt(sequence);
+        endTable();
+    }
+
+    void write(FileHandle f) {
+        if (tableStart >= 0) {
+            throw new IllegalStateException("Table not ended");
+        }
+
+        if (!removedIds.isEmpty()) {
+            beginTable(SaveReader.REMOVED_TABLE);
+            for (int i = 0; i < removedIds.size(); ++i) {
+                beginRecord();
+                putString(removedTables.get(i));
+                putInt(removedIds.get(i));
+            }
+            endTable();
+            removedIds.clear();
+        }
+
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int stringBytes = 0;
+        for (String s : strings) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            stringBytes += 4 + b.length;
+        }
+
+        ByteBuffer header = allocate(24 + stringBytes);
+        header.putInt(MAGIC);
+        header.putInt(version);
+        header.putInt(strings.size());
+        header.putInt(listCount);
+        header.putInt(tableCount);
+        header.putInt(0); // reserved
+        for (byte[] b : encoded) {
+            header.putInt(b.length);
+            header.put(b);
+        }
+        header.flip();
+        lists.flip();
+        tables.flip();
+
+        // written aside and moved in place, so that a save cut short never leaves a broken file in the chain
+        ByteBuffer[] buffers = {header, lists, tables};
+        Path target = f.file().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (header.hasRemaining() || lists.hasRemaining() || tables.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FileWriteException(f.path(), e);
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
@@ -11,13 +11,12 @@ import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.HashSet;
 
 /**
  * Created by Peter on 24/5/2015.
  */
-public class Section extends GameObject {
+public class Section extends GameObject implements HasFaction {
 
     public static final String SAVE_FILE = "Section.csv";
 
@@ -36,17 +35,14 @@ public class Section extends GameObject {
         GameObjectList<Section> result = new GameObjectList<>();
 
         FileHandle f = root.child(Section.SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Section data = new Section(Integer.parseInt(line[0]), scen);
-                data.setAiTags(line[1]);
-                data.name = line[2];
-                data.belongedFaction = scen.getFactions().get(Integer.parseInt(line[3]));
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Section data = new Section(in.getInt(), scen);
+                data.setAiTags(in.getString());
+                data.name = in.getString();
+                data.belongedFaction = scen.getFactions().get(in.getInt());
 
                 result.add(data);
             }
@@ -75,6 +71,35 @@ public class Section extends GameObject {
 
     }
 
+    static GameObjectList<Section> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Section> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Section data = new Section(in.getInt(), scen);
+            data.setAiTags(in.getString());
+            data.name = in.getString();
+            data.belongedFaction = scen.getFactions().get(in.getInt());
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Section> data) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Section d : data) {
+            out.beginRecord();
+            out.putInt(d.getId());
+            out.putString(d.getAiTags());
+            out.putString(d.getName());
+            out.putInt(d.belongedFaction.getId());
+        }
+        out.endTable();
+    }
+
     @Override
     @LuaAI.ExportToLua
     public String getName() {
@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 17/3/2015.
@@ -37,19 +36,16 @@ public final class TerrainDetail extends GameObject {
         GameObjectList<TerrainDetail> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
                 TerrainDetailBuilder builder = new TerrainDetailBuilder();
-                builder.setId(Integer.parseInt(line[0]));
-                builder.setAiTag(line[1]);
-                builder.setName(line[2]);
-                builder.setCanBeViewedThrough(Boolean.parseBoolean(line[3]));
-                builder.setFireDamageRate(Float.parseFloat(line[4]));
+                builder.setId(in.getInt());
+                builder.setAiTag(in.getString());
+                builder.setName(in.getString());
+                builder.setCanBeViewedThrough(in.getBoolean());
+                builder.setFireDamageRate(in.getFloat());
 
                 result.add(builder.createTerrainDetail());
             }
@@ -79,6 +75,37 @@ public final class TerrainDetail extends GameObject {
 
     }
 
+    static GameObjectList<TerrainDetail> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<TerrainDetail> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            TerrainDetailBuilder builder = new TerrainDetailBuilder();
+            builder.setId(in.getInt());
+            builder.setAiTag(in.getString());
+            builder.setName(in.getString());
+            builder.setCanBeViewedThrough(in.getBoolean());
+            builder.setFireDamageRate(in.getFloat());
+            result.add(builder.createTerrainDetail());
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<TerrainDetail> terrainDetails) {
+        out.beginTable(SAVE_FILE);
+        for (TerrainDetail detail : terrainDetails) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putString(detail.getName());
+            out.putBoolean(detail.canBeViewedThrough);
+            out.putFloat(detail.fireDamageRate);
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -1,24 +1,25 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Pair;
 import com.zhsan.common.Point;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
+import com.zhsan.gameobject.pathfinding.PathCache;
+import com.zhsan.lua.LuaAI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 
 /**
  * Created by Peter on 8/8/2015.
  */
-public class Troop extends GameObject implements HasPointLocation {
+public class Troop extends GameObject implements HasPointLocation, HasFaction {
 
     public static final String SAVE_FILE = "Troop.csv";
 
@@ -90,6 +91,27 @@ public class Troop extends GameObject implements HasPointLocation {
             return null;
         }
 
+        static Order fromBinary(GameScenario scenario, SaveReader in) {
+            OrderKind orderKind = OrderKind.values()[in.getInt()];
+            Point targetLocation = in.getPoint();
+            int targetId = in.getInt();
+            switch (orderKind) {
+                case IDLE:
+                    return new Order(scenario, orderKind, null);
+                case MOVE:
+                case ATTACK_LOCATION:
+                    return new Order(scenario, orderKind, targetLocation);
+                default:
+                    return new Order(scenario, orderKind, targetId);
+            }
+        }
+
+        void toBinary(SaveWriter out) {
+            out.putInt(kind.ordinal());
+            out.putPoint(targetLocation);
+            out.putInt(targetId);
+        }
+
         Pair<String, String> toCSV() {
             String orderKind = kind.toCSV();
             switch (kind) {
@@ -138,19 +160,16 @@ public class Troop extends GameObject implements HasPointLocation {
         GameObjectList<Troop> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
-                Troop data = new Troop(Integer.parseInt(line[0]), scen);
-                data.setAiTags(line[1]);
-                data.location = Point.fromCSV(line[2]);
-                data.order = Order.fromCSV(scen, line[3], line[4]);
-                data.belongedSection = scen.getSections().get(Integer.parseInt(line[5]));
-                data.startArchitecture = scen.getArchitectures().get(Integer.parseInt(line[6]));
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
+                Troop data = new Troop(in.getInt(), scen);
+                data.setAiTags(in.getString());
+                data.location = in.getPoint();
+                data.order = Order.fromCSV(scen, in.getString(), in.getString());
+                data.belongedSection = scen.getSections().get(in.getInt());
+                data.startArchitecture = scen.getArchitectures().get(in.getInt());
 
                 result.add(data);
             }
@@ -182,6 +201,39 @@ public class Troop extends GameObject implements HasPointLocation {
         }
     }
 
+    static GameObjectList<Troop> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<Troop> result = new GameObjectList<>();
+
+        int n = in.beginTrackedTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            Troop data = new Troop(in.getInt(), scen);
+            data.setAiTags(in.getString());
+            data.location = in.getPoint();
+            data.order = Order.fromBinary(scen, in);
+            data.belongedSection = scen.getSections().get(in.getInt());
+            data.startArchitecture = scen.getArchitectures().get(in.getInt());
+
+            result.add(data);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<Troop> types) {
+        out.beginTrackedTable(SAVE_FILE);
+        for (Troop detail : types) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.getAiTags());
+            out.putPoint(detail.location);
+            detail.order.toBinary(out);
+            out.putInt(detail.belongedSection.getId());
+            out.putInt(detail.startArchitecture.getId());
+        }
+        out.endTable();
+    }
+
     public Troop(int id, GameScenario scen) {
         super(id);
         this.scenario = scen;
@@ -252,10 +304,12 @@ public class Troop extends GameObject implements HasPointLocation {
         return getLeader().getName();
     }
 
+    @LuaAI.ExportToLua
     public int getMorale() {
         return getMilitary().getMorale();
     }
 
+    @LuaAI.ExportToLua
     public int getCombativity() {
         return getMilitary().getCombativity();
     }
@@ -265,6 +319,7 @@ public class Troop extends GameObject implements HasPointLocation {
         return this;
     }
 
+    @LuaAI.ExportToLua
     public int getCommand() {
         return (int) (getLeader().getCommand() +
                 Math.max(getMilitary().getPersons().getAll().stream()
@@ -273,6 +328,7 @@ public class Troop extends GameObject implements HasPointLocation {
                                 .orElse(0) - getLeader().getCommand(), 0) * GlobalVariables.troopCommandPersonFactor);
     }
 
+    @LuaAI.ExportToLua
     public int getStrength() {
         return (int) (getLeader().getStrength() +
                 Math.max(getMilitary().getPersons().getAll().stream()
@@ -281,6 +337,7 @@ public class Troop extends GameObject implements HasPointLocation {
                         .orElse(0) - getLeader().getStrength(), 0) * GlobalVariables.troopStrengthPersonFactor);
     }
 
+    @LuaAI.ExportToLua
     public int getIntelligence() {
         return (int) (getLeader().getIntelligence() +
                 Math.max(getMilitary().getPersons().getAll().stream()
@@ -289,6 +346,7 @@ public class Troop extends GameObject implements HasPointLocation {
                         .orElse(0) - getLeader().getIntelligence(), 0) * GlobalVariables.troopIntelligencePersonFactor);
     }
 
+    @LuaAI.ExportToLua
     public float getOffense() {
         return (getCommand() * 0.7f + getStrength() * 0.3f) / 100.0f *
                 getMorale() / 100.0f *
@@ -296,6 +354,7 @@ public class Troop extends GameObject implements HasPointLocation {
                 (getKind().getOffense() + getKind().getOffensePerUnit() * getMilitary().getUnitCount());
     }
 
+    @LuaAI.ExportToLua
     public float getDefense() {
         return getCommand() / 100.0f *
                 getMorale() / 100.0f *
@@ -303,10 +362,12 @@ public class Troop extends GameObject implements HasPointLocation {
                 (getKind().getDefense() + getKind().getDefensePerUnit() * getMilitary().getUnitCount());
     }
 
+    @LuaAI.ExportToLua
     public int getQuantity() {
         return getMilitary().getQuantity();
     }
 
+    @LuaAI.ExportToLua
     public float getUnitCount() {
         return getMilitary().getUnitCount();
     }
@@ -320,6 +381,8 @@ public class Troop extends GameObject implements HasPointLocation {
                     .forEach(x -> x.order = ORDER_IDLE);
             this.getMilitary().getAllPersons().forEach(p -> p.moveToArchitecture(this.getLocation(), this.startArchitecture));
             destroy(true);
+        } else {
+            scenario.onTroopDamaged(this);
         }
         return destroy;
     }
@@ -377,31 +440,61 @@ public class Troop extends GameObject implements HasPointLocation {
     private int currentMovability;
 
     private boolean attacked;
+    private boolean waiting;
 
-    public void initExecuteOrder() {
-        Point targetLocation;
+    public Point getOrderTargetLocation() {
         if (this.order.targetLocation != null) {
-            targetLocation = this.order.targetLocation;
+            return this.order.targetLocation;
         } else if (this.order.kind == OrderKind.ATTACK_ARCH || this.order.kind == OrderKind.MOVE_ENTER) {
-            targetLocation = scenario.getArchitectures().get(this.order.targetId).getLocation();
+            return scenario.getArchitectures().get(this.order.targetId).getLocation();
         } else if (this.order.kind == OrderKind.ATTACK_TROOP) {
-            targetLocation = scenario.getTroops().get(this.order.targetId).getLocation();
+            return scenario.getTroops().get(this.order.targetId).getLocation();
         } else {
-            targetLocation = null;
+            return null;
         }
+    }
+
+    public void initExecuteOrder() {
+        Point targetLocation = getOrderTargetLocation();
 
         if (targetLocation != null) {
             currentMovability = this.getMilitary().getKind().getMovability();
-            currentPath = new ArrayDeque<>(scenario.getPathFinder(this).findPath(this.location, targetLocation));
-            currentPath.poll();
+
+            PathCache cache = scenario.getPathCache();
+            List<Point> path = cache.get(this, this.location, targetLocation);
+            if (path == null) {
+                path = scenario.getPathFinder(this).findPath(this.location, targetLocation);
+                cache.put(this, path);
+            }
+
+            if (path != null) {
+                currentPath = new ArrayDeque<>(path);
+                currentPath.poll();
+            } else {
+                currentPath = null;
+            }
         } else {
             currentPath = null;
         }
 
         attacked = false;
+        waiting = false;
+    }
+
+    /**
+     * Replace today's path with one planned elsewhere, e.g. by CooperativePathPlanner. The path starts from the
+     * step after the current location; a point equal to the previous one means waiting for a step.
+     */
+    public void setPlannedPath(List<Point> path) {
+        currentPath = new ArrayDeque<>(path);
+    }
+
+    public boolean isWaiting() {
+        return waiting;
     }
 
     public boolean stepForward() {
+        waiting = false;
         if (currentPath == null) {
             return true;
         }
@@ -409,6 +502,11 @@ public class Troop extends GameObject implements HasPointLocation {
         Point p = currentPath.poll();
         if (p == null) return false;
 
+        if (p.equals(location)) {
+            waiting = true;
+            return true;
+        }
+
         if (!canMoveInto(p)) {
             return false;
         }
@@ -417,7 +515,9 @@ public class Troop extends GameObject implements HasPointLocation {
 
         if (cost <= currentMovability) {
             currentMovability -= cost;
+            Point old = location;
             location = p;
+            scenario.onTroopMoved(this, old, p);
         } else {
             return false;
         }
@@ -1,15 +1,14 @@
 package com.zhsan.gameobject;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.zhsan.common.CSVTokenizer;
 import com.zhsan.common.exception.FileReadException;
 import com.zhsan.common.exception.FileWriteException;
 import com.zhsan.gamecomponents.GlobalStrings;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by Peter on 4/8/2015.
@@ -54,20 +53,17 @@ public final class TroopAnimation extends GameObject {
         GameObjectList<TroopAnimation> result = new GameObjectList<>();
 
         FileHandle f = root.child(SAVE_FILE);
-        try (CSVReader reader = new CSVReader(new InputStreamReader(f.read(), "UTF-8"))) {
-            String[] line;
-            int index = 0;
-            while ((line = reader.readNext()) != null) {
-                index++;
-                if (index == 1) continue; // skip first line.
-
+        try {
+            CSVTokenizer in = CSVTokenizer.read(f);
+            in.nextRow(); // skip first line.
+            while (in.nextRow()) {
                 TroopAnimation t = new TroopAnimationBuilder()
-                        .setId(Integer.parseInt(line[0]))
-                        .setName(line[1])
-                        .setFileName(line[2])
-                        .setFrameCount(Integer.parseInt(line[3]))
-                        .setIdleFrame(Integer.parseInt(line[4]))
-                        .setSpriteSize(Integer.parseInt(line[5]))
+                        .setId(in.getInt())
+                        .setName(in.getString())
+                        .setFileName(in.getString())
+                        .setFrameCount(in.getInt())
+                        .setIdleFrame(in.getInt())
+                        .setSpriteSize(in.getInt())
                         .createTroopAnimation();
 
                 result.add(t);
@@ -99,6 +95,40 @@ public final class TroopAnimation extends GameObject {
 
     }
 
+    static GameObjectList<TroopAnimation> fromBinary(SaveReader in, @NotNull GameScenario scen) {
+        GameObjectList<TroopAnimation> result = new GameObjectList<>();
+
+        int n = in.beginTable(SAVE_FILE);
+        for (int i = 0; i < n; ++i) {
+            in.nextRecord();
+            TroopAnimation t = new TroopAnimationBuilder()
+                    .setId(in.getInt())
+                    .setName(in.getString())
+                    .setFileName(in.getString())
+                    .setFrameCount(in.getInt())
+                    .setIdleFrame(in.getInt())
+                    .setSpriteSize(in.getInt())
+                    .createTroopAnimation();
+            result.add(t);
+        }
+
+        return result;
+    }
+
+    static void toBinary(SaveWriter out, GameObjectList<TroopAnimation> kinds) {
+        out.beginTable(SAVE_FILE);
+        for (TroopAnimation detail : kinds) {
+            out.beginRecord();
+            out.putInt(detail.getId());
+            out.putString(detail.name);
+            out.putString(detail.fileName);
+            out.putInt(detail.frameCount);
+            out.putInt(detail.idleFrame);
+            out.putInt(detail.spriteSize);
+        }
+        out.endTable();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,57 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Dial's bucket queue for small non-negative integer step costs. All pending priorities must lie within
+ * [current, current + maxStepCost], so a circular array of maxStepCost + 1 buckets is enough. Stale entries
+ * are not removed; callers skip them when polled.
+ */
+final class BucketQueue {
+
+    private IntArray[] buckets = new IntArray[0];
+    private int current, size;
+
+    void reset(int maxStepCost) {
+        int n = maxStepCost + 1;
+        if (buckets.length != n) {
+            buckets = new IntArray[n];
+            for (int i = 0; i < n; ++i) {
+                buckets[i] = new IntArray();
+            }
+        } else {
+            for (IntArray b : buckets) {
+                b.clear();
+            }
+        }
+        current = 0;
+        size = 0;
+    }
+
+    void add(int item, int priority) {
+        buckets[priority % buckets.length].add(item);
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove an item with the lowest priority. Its priority is available from getCurrentPriority() afterwards.
+     */
+    int poll() {
+        IntArray b = buckets[current % buckets.length];
+        while (b.size == 0) {
+            current++;
+            b = buckets[current % buckets.length];
+        }
+        size--;
+        return b.pop();
+    }
+
+    int getCurrentPriority() {
+        return current;
+    }
+
+}
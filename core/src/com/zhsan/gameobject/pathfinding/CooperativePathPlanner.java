@@ -0,0 +1,219 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Windowed hierarchical cooperative pathfinding: plans the day's moves of all moving troops of a faction against a
+ * shared space-time reservation table, so that troops travelling together do not block each other. Within the
+ * window the search is exact; beyond it, a terrain-only distance field towards the goal guides the choice of where
+ * to stop. A time step is one pass of GameScenario.advanceDay's stepping loop. Factions are planned independently
+ * and in parallel.
+ */
+public class CooperativePathPlanner {
+
+    private static class ReservationTable {
+        private final Set<Long> claimed = new HashSet<>();
+        private final Map<Integer, Integer> lastClaimed = new HashMap<>();
+        private final Map<Integer, Integer> restingFrom = new HashMap<>();
+
+        private static long key(int index, int time) {
+            return (long) time << 32 | index;
+        }
+
+        private void claim(int index, int time) {
+            claimed.add(key(index, time));
+            lastClaimed.merge(index, time, Math::max);
+        }
+
+        private void rest(int index, int time) {
+            restingFrom.merge(index, time, Math::min);
+        }
+
+        // a troop standing on a tile at time t holds it for t and t + 1, so nobody follows into a tile
+        // in the same pass it is vacated and two troops never swap places
+        private boolean isFree(int index, int time) {
+            if (claimed.contains(key(index, time)) || claimed.contains(key(index, time + 1))) return false;
+            Integer rest = restingFrom.get(index);
+            return rest == null || rest > time + 1;
+        }
+
+        private boolean canRest(int index, int time) {
+            if (restingFrom.containsKey(index)) return false;
+            Integer last = lastClaimed.get(index);
+            return last == null || last < time;
+        }
+    }
+
+    private static class State {
+        private final int index, time, cost;
+        private final State parent;
+
+        private State(int index, int time, int cost, State parent) {
+            this.index = index;
+            this.time = time;
+            this.cost = cost;
+            this.parent = parent;
+        }
+    }
+
+    private final GameScenario scen;
+
+    public CooperativePathPlanner(GameScenario scen) {
+        this.scen = scen;
+    }
+
+    public void plan(Collection<Troop> troops) {
+        Map<Troop, Point> targets = new HashMap<>();
+        for (Troop t : troops) {
+            Point target = t.getOrderTargetLocation();
+            if (target != null && !target.equals(t.getLocation())) {
+                targets.put(t, target);
+            }
+        }
+
+        Map<Faction, List<Troop>> byFaction = targets.keySet().stream()
+                .collect(Collectors.groupingBy(Troop::getBelongedFaction));
+
+        byFaction.entrySet().parallelStream().forEach(e -> planFaction(e.getKey(), e.getValue(), troops, targets));
+    }
+
+    private void planFaction(Faction faction, List<Troop> moving, Collection<Troop> allTroops, Map<Troop, Point> targets) {
+        int width = scen.getGameMap().getWidth();
+        int window = GlobalVariables.cooperativePlanningWindow;
+
+        // tiles no planned troop of this faction may enter today
+        Set<Integer> blocked = new HashSet<>();
+        for (Troop t : allTroops) {
+            if (t.getBelongedFaction() != faction || !targets.containsKey(t)) {
+                blocked.add(index(t.getLocation(), width));
+            }
+        }
+        for (Architecture a : scen.getArchitectures()) {
+            if (a.getBelongedFaction() != faction && a.getEndurance() > 0) {
+                for (Point p : a.getLocations()) {
+                    blocked.add(index(p, width));
+                }
+            }
+        }
+
+        // teammates that are not planned yet keep their tiles until they are
+        Set<Integer> pending = moving.stream().map(t -> index(t.getLocation(), width)).collect(Collectors.toSet());
+
+        Map<Long, int[]> distances = new HashMap<>();
+        Map<Troop, int[]> heuristics = new HashMap<>();
+        for (Troop t : moving) {
+            TerrainCosts costs = scen.getReachableAreaFinder().getTerrainCosts(t.getKind());
+            int goal = index(targets.get(t), width);
+            long key = (long) t.getKind().getId() << 32 | goal;
+            heuristics.put(t, distances.computeIfAbsent(key, k -> {
+                IntArray goals = new IntArray();
+                goals.add(goal);
+                return DistanceField.towards(costs, goals, null);
+            }));
+        }
+
+        List<Troop> order = new ArrayList<>(moving);
+        order.sort(Comparator.<Troop>comparingInt(t -> heuristics.get(t)[index(t.getLocation(), width)])
+                .thenComparingInt(Troop::getId));
+
+        ReservationTable table = new ReservationTable();
+        for (Troop t : order) {
+            int start = index(t.getLocation(), width);
+            pending.remove(start);
+
+            int[] h = heuristics.get(t);
+            State end = null;
+            if (h[start] != DistanceField.UNREACHABLE) {
+                TerrainCosts costs = scen.getReachableAreaFinder().getTerrainCosts(t.getKind());
+                end = search(costs, h, start, t.getKind().getMovability(), window, blocked, pending, table);
+            }
+
+            if (end == null) {
+                // leave its own path alone, but keep everyone else clear of where it stands
+                table.claim(start, 0);
+                table.rest(start, 0);
+                continue;
+            }
+
+            LinkedList<Point> path = new LinkedList<>();
+            for (State s = end; s != null; s = s.parent) {
+                table.claim(s.index, s.time);
+                table.claim(s.index, s.time + 1);
+                if (s.parent != null) {
+                    path.addFirst(new Point(s.index % width, s.index / width));
+                }
+            }
+            table.rest(end.index, end.time);
+
+            t.setPlannedPath(path);
+        }
+    }
+
+    private State search(TerrainCosts costs, int[] h, int start, int movability, int window,
+                         Set<Integer> blocked, Set<Integer> pending, ReservationTable table) {
+        int width = costs.getWidth(), height = costs.getHeight();
+
+        State root = new State(start, 0, 0, null);
+        State best = null, fallback = root;
+
+        Map<Integer, State> layer = new HashMap<>();
+        layer.put(start, root);
+        for (int time = 0; time <= window && !layer.isEmpty(); ++time) {
+            Map<Integer, State> next = new HashMap<>();
+            for (State s : layer.values()) {
+                if (better(s, fallback, h)) {
+                    fallback = s;
+                }
+                if (table.canRest(s.index, s.time) && (best == null || better(s, best, h))) {
+                    best = s;
+                }
+                if (time == window || h[s.index] == 0) continue;
+
+                int x = s.index % width, y = s.index / width;
+                expand(s, s.index, 0, next, table);
+                if (x > 0) expand(s, s.index - 1, movability, costs, blocked, pending, next, table);
+                if (y > 0) expand(s, s.index - width, movability, costs, blocked, pending, next, table);
+                if (x < width - 1) expand(s, s.index + 1, movability, costs, blocked, pending, next, table);
+                if (y < height - 1) expand(s, s.index + width, movability, costs, blocked, pending, next, table);
+            }
+            layer = next;
+        }
+
+        return best != null ? best : fallback;
+    }
+
+    private void expand(State from, int to, int movability, TerrainCosts costs,
+                        Set<Integer> blocked, Set<Integer> pending, Map<Integer, State> next, ReservationTable table) {
+        int step = costs.getCost(to);
+        if (step == TerrainCosts.IMPASSABLE || from.cost + step > movability) return;
+        if (blocked.contains(to) || pending.contains(to)) return;
+        expand(from, to, step, next, table);
+    }
+
+    private void expand(State from, int to, int step, Map<Integer, State> next, ReservationTable table) {
+        int time = from.time + 1;
+        if (!table.isFree(to, time)) return;
+
+        State old = next.get(to);
+        if (old == null || old.cost > from.cost + step) {
+            next.put(to, new State(to, time, from.cost + step, from));
+        }
+    }
+
+    private static boolean better(State a, State b, int[] h) {
+        if (h[a.index] != h[b.index]) return h[a.index] < h[b.index];
+        if (a.time != b.time) return a.time < b.time;
+        return a.cost < b.cost;
+    }
+
+    private static int index(Point p, int width) {
+        return p.y * width + p.x;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * Terrain-only movement cost from every tile to the nearest of a set of goal tiles, ignoring troops.
+ */
+public final class DistanceField {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private DistanceField() {}
+
+    /**
+     * Fill out with the cost of walking from each tile into the nearest goal. Entering a tile costs that tile's
+     * terrain cost, so the search runs backwards from the goals. Goals themselves need not be passable.
+     */
+    public static int[] towards(TerrainCosts costs, IntArray goals, int[] out) {
+        return towards(costs, goals, null, out);
+    }
+
+    /**
+     * Same as above, except that tiles marked in blocked can be left but not walked through.
+     */
+    public static int[] towards(TerrainCosts costs, IntArray goals, boolean[] blocked, int[] out) {
+        int size = costs.getWidth() * costs.getHeight();
+        if (out == null || out.length != size) {
+            out = new int[size];
+        }
+        Arrays.fill(out, UNREACHABLE);
+
+        BucketQueue queue = new BucketQueue();
+        queue.reset(costs.getMaxStepCost());
+        for (int i = 0; i < goals.size; ++i) {
+            int g = goals.get(i);
+            if (g >= 0 && g < size) {
+                out[g] = 0;
+            }
+        }
+        for (int i = 0; i < goals.size; ++i) {
+            int g = goals.get(i);
+            if (g >= 0 && g < size) {
+                // an impassable goal, such as an enemy to attack, counts as reached from any neighbour
+                int step = costs.isPassable(g) ? costs.getCost(g) : 0;
+                relaxNeighbours(costs, blocked, out, queue, g, step);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int n = queue.poll();
+            int d = queue.getCurrentPriority();
+            if (out[n] != d) continue;
+
+            relaxNeighbours(costs, blocked, out, queue, n, d + costs.getCost(n));
+        }
+
+        return out;
+    }
+
+    private static void relaxNeighbours(TerrainCosts costs, boolean[] blocked, int[] out, BucketQueue queue, int n, int nd) {
+        int width = costs.getWidth(), height = costs.getHeight();
+        int x = n % width, y = n / width;
+        if (x > 0) relax(costs, blocked, out, queue, n - 1, nd);
+        if (y > 0) relax(costs, blocked, out, queue, n - width, nd);
+        if (x < width - 1) relax(costs, blocked, out, queue, n + 1, nd);
+        if (y < height - 1) relax(costs, blocked, out, queue, n + width, nd);
+    }
+
+    private static void relax(TerrainCosts costs, boolean[] blocked, int[] out, BucketQueue queue, int index, int nd) {
+        if (!costs.isPassable(index)) return;
+        if (out[index] <= nd) return;
+        out[index] = nd;
+        if (blocked == null || !blocked[index]) {
+            queue.add(index, nd);
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.Troop;
+
+import java.util.*;
+
+/**
+ * Bounded LRU cache of troop paths, keyed by military kind, faction, start and goal. The map is divided into
+ * square regions, each with a version that is bumped whenever occupancy or passability inside it changes. An entry
+ * remembers the highest version over the regions around its path and is dropped once that changes. A troop
+ * walking along its own cached path keeps the entry valid, so an unchanged order is not searched again every day.
+ * Any suffix of a cached path can be served to a troop standing on it with the same goal.
+ */
+public class PathCache {
+
+    public static final int REGION_SIZE = 16;
+
+    // search may wander a little outside the path's bounding box, so watch one extra region around it
+    private static final int REGION_MARGIN = 1;
+
+    private static final int ENTRY_BYTES = 128;
+    private static final int PATH_POINT_BYTES = 4;
+
+    private static final class Key {
+        private final int kind, faction, from, to;
+
+        private Key(int kind, int faction, int from, int to) {
+            this.kind = kind;
+            this.faction = faction;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return kind == key.kind && faction == key.faction && from == key.from && to == key.to;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = kind;
+            result = 31 * result + faction;
+            result = 31 * result + from;
+            result = 31 * result + to;
+            return result;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final int[] path;
+        private final int regionX0, regionY0, regionX1, regionY1;
+        private int version;
+
+        private Entry(Key key, int[] path, int regionX0, int regionY0, int regionX1, int regionY1, int version) {
+            this.key = key;
+            this.path = path;
+            this.regionX0 = regionX0;
+            this.regionY0 = regionY0;
+            this.regionX1 = regionX1;
+            this.regionY1 = regionY1;
+            this.version = version;
+        }
+
+        private int indexOf(int index) {
+            for (int i = 0; i < path.length; ++i) {
+                if (path[i] == index) return i;
+            }
+            return -1;
+        }
+    }
+
+    private final int width, height;
+    private final int regionsX, regionsY;
+    private final int[] regionVersions;
+    private int versionCounter;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Map<Key, Set<Entry>> byGoal = new HashMap<>();
+    private final Map<Integer, Entry> byTroop = new HashMap<>();
+
+    private long hits, subPathHits, misses, evictions, invalidations;
+    private long storedPoints;
+
+    public PathCache(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.regionsX = (width + REGION_SIZE - 1) / REGION_SIZE;
+        this.regionsY = (height + REGION_SIZE - 1) / REGION_SIZE;
+        this.regionVersions = new int[regionsX * regionsY];
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > PathCache.this.capacity) {
+                    unlink(eldest.getValue());
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized List<Point> get(Troop troop, Point from, Point to) {
+        int kind = troop.getKind().getId();
+        int faction = troop.getBelongedFaction().getId();
+        int fromIndex = index(from), toIndex = index(to);
+
+        Entry e = entries.get(new Key(kind, faction, fromIndex, toIndex));
+        if (e != null) {
+            if (isValid(e)) {
+                hits++;
+                byTroop.put(troop.getId(), e);
+                return toPoints(e.path, 0);
+            }
+            remove(e);
+            invalidations++;
+        }
+
+        Set<Entry> candidates = byGoal.get(new Key(kind, faction, -1, toIndex));
+        if (candidates != null) {
+            for (Entry c : new ArrayList<>(candidates)) {
+                if (!isValid(c)) {
+                    remove(c);
+                    invalidations++;
+                    continue;
+                }
+                int i = c.indexOf(fromIndex);
+                if (i >= 0) {
+                    subPathHits++;
+                    entries.get(c.key);
+                    byTroop.put(troop.getId(), c);
+                    return toPoints(c.path, i);
+                }
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(Troop troop, List<Point> path) {
+        if (path == null || path.isEmpty()) return;
+
+        int[] indices = new int[path.size()];
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < indices.length; ++i) {
+            Point p = path.get(i);
+            indices[i] = index(p);
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+
+        int rx0 = Math.max(0, minX / REGION_SIZE - REGION_MARGIN);
+        int ry0 = Math.max(0, minY / REGION_SIZE - REGION_MARGIN);
+        int rx1 = Math.min(regionsX - 1, maxX / REGION_SIZE + REGION_MARGIN);
+        int ry1 = Math.min(regionsY - 1, maxY / REGION_SIZE + REGION_MARGIN);
+
+        Key key = new Key(troop.getKind().getId(), troop.getBelongedFaction().getId(),
+                indices[0], indices[indices.length - 1]);
+        Entry old = entries.get(key);
+        if (old != null) {
+            remove(old);
+        }
+
+        Entry e = new Entry(key, indices, rx0, ry0, rx1, ry1, 0);
+        e.version = maxVersion(e);
+
+        byGoal.computeIfAbsent(new Key(key.kind, key.faction, -1, key.to), k -> new HashSet<>()).add(e);
+        storedPoints += indices.length;
+        byTroop.put(troop.getId(), e);
+        entries.put(key, e);
+    }
+
+    /**
+     * Occupancy or passability at p has changed.
+     */
+    public synchronized void invalidate(Point p) {
+        if (p.x < 0 || p.x >= width || p.y < 0 || p.y >= height) return;
+        regionVersions[(p.y / REGION_SIZE) * regionsX + p.x / REGION_SIZE] = ++versionCounter;
+    }
+
+    public synchronized void invalidate(Collection<Point> points) {
+        points.forEach(this::invalidate);
+    }
+
+    public synchronized void onTroopMoved(Troop troop, Point from, Point to) {
+        Entry own = byTroop.get(troop.getId());
+        boolean ownValid = own != null && isValid(own);
+
+        invalidate(from);
+        invalidate(to);
+
+        if (ownValid && own.indexOf(index(to)) >= 0) {
+            own.version = maxVersion(own);
+        }
+    }
+
+    public synchronized void onTroopRemoved(Troop troop) {
+        byTroop.remove(troop.getId());
+        invalidate(troop.getLocation());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byGoal.clear();
+        byTroop.clear();
+        storedPoints = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getSubPathHits() {
+        return subPathHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + subPathHits + misses;
+        return total == 0 ? 0 : (double) (hits + subPathHits) / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return (long) entries.size() * ENTRY_BYTES + storedPoints * PATH_POINT_BYTES + regionVersions.length * 4L;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = subPathHits = misses = evictions = invalidations = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PathCache{" +
+                "size=" + entries.size() +
+                ", hits=" + hits +
+                ", subPathHits=" + subPathHits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                ", hitRate=" + getHitRate() +
+                ", estimatedBytes=" + getEstimatedBytes() +
+                '}';
+    }
+
+    private boolean isValid(Entry e) {
+        return maxVersion(e) == e.version;
+    }
+
+    private int maxVersion(Entry e) {
+        int result = 0;
+        for (int ry = e.regionY0; ry <= e.regionY1; ++ry) {
+            for (int rx = e.regionX0; rx <= e.regionX1; ++rx) {
+                result = Math.max(result, regionVersions[ry * regionsX + rx]);
+            }
+        }
+        return result;
+    }
+
+    private void remove(Entry e) {
+        entries.remove(e.key);
+        unlink(e);
+    }
+
+    private void unlink(Entry e) {
+        Key goalKey = new Key(e.key.kind, e.key.faction, -1, e.key.to);
+        Set<Entry> s = byGoal.get(goalKey);
+        if (s != null) {
+            s.remove(e);
+            if (s.isEmpty()) {
+                byGoal.remove(goalKey);
+            }
+        }
+        byTroop.values().removeIf(x -> x == e);
+        storedPoints -= e.path.length;
+    }
+
+    private int index(Point p) {
+        return p.y * width + p.x;
+    }
+
+    private List<Point> toPoints(int[] path, int from) {
+        List<Point> result = new ArrayList<>(path.length - from);
+        for (int i = from; i < path.length; ++i) {
+            result.add(new Point(path[i] % width, path[i] / width));
+        }
+        return result;
+    }
+
+}
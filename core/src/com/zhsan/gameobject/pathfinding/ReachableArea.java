@@ -0,0 +1,79 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.zhsan.common.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of a reachable-area query: a bitmap over the map plus the reached tiles in order of increasing cost.
+ * Instances can be reused across queries to avoid reallocating the bitmap.
+ */
+public class ReachableArea {
+
+    private int width, height;
+    private long[] bits = new long[0];
+    private final IntArray indices = new IntArray();
+    private final IntArray costs = new IntArray();
+
+    void reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int words = (width * height + 63) >>> 6;
+        if (bits.length < words) {
+            bits = new long[words];
+        } else {
+            Arrays.fill(bits, 0, words, 0L);
+        }
+        indices.clear();
+        costs.clear();
+    }
+
+    void add(int index, int cost) {
+        bits[index >>> 6] |= 1L << index;
+        indices.add(index);
+        costs.add(cost);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return indices.size;
+    }
+
+    public boolean contains(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return false;
+        int index = y * width + x;
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean contains(Point p) {
+        return contains(p.x, p.y);
+    }
+
+    public Point getPoint(int i) {
+        int index = indices.get(i);
+        return new Point(index % width, index / width);
+    }
+
+    public int getCost(int i) {
+        return costs.get(i);
+    }
+
+    public List<Point> getPoints() {
+        List<Point> result = new ArrayList<>(indices.size);
+        for (int i = 0; i < indices.size; ++i) {
+            result.add(getPoint(i));
+        }
+        return result;
+    }
+
+}
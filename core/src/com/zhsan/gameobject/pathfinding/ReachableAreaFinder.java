@@ -0,0 +1,117 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.GameScenario;
+import com.zhsan.gameobject.MilitaryKind;
+import com.zhsan.gameobject.Troop;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds all tiles a troop can reach within a movement budget, using Dial's algorithm over the integer terrain
+ * costs. Safe to call from several threads at once: every thread owns its own scratch arrays.
+ */
+public class ReachableAreaFinder {
+
+    private static class Scratch {
+        private int[] dist = new int[0];
+        private int[] distStamp = new int[0];
+        private int[] checkStamp = new int[0];
+        private boolean[] enterable = new boolean[0];
+        private int generation;
+        private final BucketQueue queue = new BucketQueue();
+
+        private void begin(int size) {
+            if (dist.length != size) {
+                dist = new int[size];
+                distStamp = new int[size];
+                checkStamp = new int[size];
+                enterable = new boolean[size];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(distStamp, 0);
+                Arrays.fill(checkStamp, 0);
+                generation = 1;
+            }
+        }
+    }
+
+    private final GameScenario scen;
+
+    private final ConcurrentHashMap<MilitaryKind, TerrainCosts> terrainCosts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public ReachableAreaFinder(GameScenario scen) {
+        this.scen = scen;
+    }
+
+    public TerrainCosts getTerrainCosts(MilitaryKind kind) {
+        return terrainCosts.computeIfAbsent(kind, k -> new TerrainCosts(scen, k));
+    }
+
+    public ReachableArea find(Troop troop, Point from, int maxCost) {
+        return find(troop, from, maxCost, new ReachableArea());
+    }
+
+    public ReachableArea find(Troop troop, Point from, int maxCost, ReachableArea out) {
+        TerrainCosts costs = getTerrainCosts(troop.getKind());
+        int width = costs.getWidth(), height = costs.getHeight();
+
+        out.reset(width, height);
+        if (from.x < 0 || from.x >= width || from.y < 0 || from.y >= height) {
+            return out;
+        }
+
+        Scratch s = scratch.get();
+        s.begin(width * height);
+        int gen = s.generation;
+        int[] dist = s.dist, distStamp = s.distStamp;
+        BucketQueue queue = s.queue;
+        queue.reset(costs.getMaxStepCost());
+
+        int start = from.y * width + from.x;
+        dist[start] = 0;
+        distStamp[start] = gen;
+        queue.add(start, 0);
+
+        while (!queue.isEmpty()) {
+            int n = queue.poll();
+            int d = queue.getCurrentPriority();
+            if (dist[n] != d) continue;
+
+            out.add(n, d);
+
+            int x = n % width, y = n / width;
+            if (x > 0) relax(troop, costs, s, queue, n - 1, d, maxCost);
+            if (y > 0) relax(troop, costs, s, queue, n - width, d, maxCost);
+            if (x < width - 1) relax(troop, costs, s, queue, n + 1, d, maxCost);
+            if (y < height - 1) relax(troop, costs, s, queue, n + width, d, maxCost);
+        }
+
+        return out;
+    }
+
+    private void relax(Troop troop, TerrainCosts costs, Scratch s, BucketQueue queue, int index, int d, int maxCost) {
+        int step = costs.getCost(index);
+        if (step == TerrainCosts.IMPASSABLE) return;
+
+        int nd = d + step;
+        if (nd > maxCost) return;
+        if (s.distStamp[index] == s.generation && s.dist[index] <= nd) return;
+
+        // occupancy checks are comparatively expensive, so only do them once per tile and only for tiles in budget
+        if (s.checkStamp[index] != s.generation) {
+            s.checkStamp[index] = s.generation;
+            s.enterable[index] = troop.canMoveInto(new Point(index % costs.getWidth(), index / costs.getWidth()));
+        }
+        if (!s.enterable[index]) return;
+
+        s.dist[index] = nd;
+        s.distStamp[index] = s.generation;
+        queue.add(index, nd);
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.zhsan.gameobject.GameMap;
+import com.zhsan.gameobject.GameScenario;
+import com.zhsan.gameobject.MilitaryKind;
+import com.zhsan.gameobject.TerrainDetail;
+
+import java.util.Collection;
+
+public final class TerrainCosts {
+
+    public static final int IMPASSABLE = Integer.MAX_VALUE;
+
+    private final int width, height;
+    private final int[] costs;
+    private final int maxStepCost;
+
+    TerrainCosts(GameScenario scen, MilitaryKind kind) {
+        GameMap map = scen.getGameMap();
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.costs = new int[width * height];
+
+        int max = 1;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                TerrainDetail terrain = map.getTerrainAt(x, y);
+                float adaptability = terrain == null ? Float.MAX_VALUE :
+                        scen.getMilitaryTerrain(kind, terrain).getAdaptability();
+
+                int cost;
+                if (adaptability == Float.MAX_VALUE) {
+                    cost = IMPASSABLE;
+                } else {
+                    cost = Math.max(0, (int) Math.ceil(adaptability));
+                    max = Math.max(max, cost);
+                }
+                costs[y * width + x] = cost;
+            }
+        }
+        this.maxStepCost = max;
+    }
+
+    private TerrainCosts(int width, int height, int[] costs, int maxStepCost) {
+        this.width = width;
+        this.height = height;
+        this.costs = costs;
+        this.maxStepCost = maxStepCost;
+    }
+
+    /**
+     * A unit cost per tile, over every tile that at least one of the given kinds can walk on.
+     */
+    static TerrainCosts onFoot(int width, int height, Collection<TerrainCosts> kinds) {
+        int[] costs = new int[width * height];
+        for (int i = 0; i < costs.length; ++i) {
+            int index = i;
+            costs[i] = kinds.isEmpty() || kinds.stream().anyMatch(k -> k.isPassable(index)) ? 1 : IMPASSABLE;
+        }
+        return new TerrainCosts(width, height, costs, 1);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxStepCost() {
+        return maxStepCost;
+    }
+
+    public int getCost(int index) {
+        return costs[index];
+    }
+
+    public int getCost(int x, int y) {
+        return costs[y * width + x];
+    }
+
+    public boolean isPassable(int index) {
+        return costs[index] != IMPASSABLE;
+    }
+
+}
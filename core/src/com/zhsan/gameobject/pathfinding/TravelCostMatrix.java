@@ -0,0 +1,273 @@
+package com.zhsan.gameobject.pathfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.Architecture;
+import com.zhsan.gameobject.GameScenario;
+import com.zhsan.gameobject.MilitaryKind;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Terrain-aware travel costs between every pair of architectures, one profile per military kind plus an on-foot
+ * profile for persons, which costs one per tile. Occupancy is ignored, and architectures that still have endurance
+ * can be entered and left but not marched through. Costs are in the same unit as MilitaryKind movability.
+ *
+ * Each destination is one column, filled by a single backward Dial search from the destination's tiles.
+ * Columns are computed in the background; until a column is known, its costs read as UNKNOWN. A column also keeps
+ * the bounding box of tiles that its optimal paths could use, so a passability change only recomputes the columns
+ * it can affect. A recomputed column is built aside and then swapped in whole, so readers on other threads see
+ * either the old column or the new one.
+ */
+public class TravelCostMatrix {
+
+    public static final int UNKNOWN = -1;
+    public static final int UNREACHABLE = DistanceField.UNREACHABLE;
+
+    private final GameScenario scen;
+
+    private final List<Architecture> architectures;
+    private final Map<Architecture, Integer> architectureIndex = new IdentityHashMap<>();
+    private final List<MilitaryKind> kinds;
+    private final Map<MilitaryKind, Integer> kindIndex = new IdentityHashMap<>();
+
+    private final int size, profiles, onFootProfile;
+    private final int width, height;
+
+    private static final class Column {
+        // [from]
+        private final int[] costs;
+        private final int x0, y0, x1, y1;
+
+        private Column(int[] costs, int x0, int y0, int x1, int y1) {
+            this.costs = costs;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        private boolean covers(Point p) {
+            return x0 <= p.x && p.x <= x1 && y0 <= p.y && p.y <= y1;
+        }
+    }
+
+    // [profile][to], null until computed
+    private final AtomicReferenceArray<Column> columns;
+
+    private TerrainCosts onFootCosts;
+
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger unknownColumns = new AtomicInteger();
+    private final ThreadLocal<int[]> fieldScratch = new ThreadLocal<>();
+
+    private boolean refreshing, refreshAgain;
+
+    public TravelCostMatrix(GameScenario scen) {
+        this.scen = scen;
+        this.architectures = new ArrayList<>(scen.getArchitectures().getAll());
+        for (int i = 0; i < architectures.size(); ++i) {
+            architectureIndex.put(architectures.get(i), i);
+        }
+        this.kinds = new ArrayList<>(scen.getMilitaryKinds().getAll());
+        for (int i = 0; i < kinds.size(); ++i) {
+            kindIndex.put(kinds.get(i), i);
+        }
+
+        this.size = architectures.size();
+        this.onFootProfile = kinds.size();
+        this.profiles = kinds.size() + 1;
+        this.width = scen.getGameMap().getWidth();
+        this.height = scen.getGameMap().getHeight();
+
+        this.columns = new AtomicReferenceArray<>(profiles * size);
+    }
+
+    /**
+     * Compute every column on background threads. Returns immediately.
+     */
+    public void computeInBackground() {
+        int columns = profiles * size;
+        unknownColumns.set(columns);
+        for (int c = 0; c < columns; ++c) {
+            dirty.add(c);
+        }
+        refreshInBackground();
+    }
+
+    /**
+     * Passability of the given tiles has changed. Columns whose paths may cross them are recomputed in the
+     * background; their old costs stay readable meanwhile.
+     */
+    public void invalidate(Collection<Point> tiles) {
+        boolean any = false;
+        for (int c = 0; c < profiles * size; ++c) {
+            Column column = columns.get(c);
+            if (column == null) continue;
+            for (Point p : tiles) {
+                if (column.covers(p)) {
+                    dirty.add(c);
+                    any = true;
+                    break;
+                }
+            }
+        }
+        if (any) {
+            refreshInBackground();
+        }
+    }
+
+    /**
+     * Wait until no columns are being computed in the background, e.g. so that timings are not disturbed by it.
+     * Columns whose computation failed stay unknown.
+     */
+    public synchronized void awaitRefresh() throws InterruptedException {
+        while (refreshing) {
+            wait();
+        }
+    }
+
+    public boolean isReady() {
+        return unknownColumns.get() == 0;
+    }
+
+    public int getCost(MilitaryKind kind, Architecture from, Architecture to) {
+        Integer k = kindIndex.get(kind);
+        if (k == null) return UNKNOWN;
+        return getCost(k, from, to);
+    }
+
+    public int getOnFootCost(Architecture from, Architecture to) {
+        return getCost(onFootProfile, from, to);
+    }
+
+    private int getCost(int profile, Architecture from, Architecture to) {
+        Integer f = architectureIndex.get(from), t = architectureIndex.get(to);
+        if (f == null || t == null) return UNKNOWN;
+        Column column = columns.get(profile * size + t);
+        return column == null ? UNKNOWN : column.costs[f];
+    }
+
+    private synchronized void refreshInBackground() {
+        if (refreshing) {
+            refreshAgain = true;
+            return;
+        }
+        refreshing = true;
+        CompletableFuture.runAsync(this::refreshDirty).whenComplete((r, e) -> {
+            if (e != null) {
+                // the failed columns stay dirty, and are tried again on the next invalidation
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e instanceof CompletionException ? e.getCause() : e);
+            }
+            synchronized (this) {
+                refreshing = false;
+                if (refreshAgain) {
+                    refreshAgain = false;
+                    refreshInBackground();
+                } else {
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    private void refreshDirty() {
+        List<Integer> refreshed = new ArrayList<>(dirty);
+        dirty.removeAll(refreshed);
+        if (refreshed.isEmpty()) return;
+
+        synchronized (this) {
+            if (onFootCosts == null) {
+                onFootCosts = TerrainCosts.onFoot(width, height, kinds.stream()
+                        .map(k -> scen.getReachableAreaFinder().getTerrainCosts(k))
+                        .collect(Collectors.toList()));
+            }
+        }
+
+        boolean[] blocked = new boolean[width * height];
+        for (Architecture a : architectures) {
+            if (a.getEndurance() > 0) {
+                for (Point p : a.getLocations()) {
+                    if (isOnMap(p)) {
+                        blocked[p.y * width + p.x] = true;
+                    }
+                }
+            }
+        }
+
+        try {
+            refreshed.parallelStream().forEach(c -> computeColumn(c, blocked));
+        } catch (RuntimeException | Error e) {
+            dirty.addAll(refreshed);
+            throw e;
+        }
+    }
+
+    private void computeColumn(int column, boolean[] blocked) {
+        int profile = column / size, to = column % size;
+        TerrainCosts tc = profile == onFootProfile ? onFootCosts :
+                scen.getReachableAreaFinder().getTerrainCosts(kinds.get(profile));
+
+        IntArray goals = new IntArray();
+        for (Point p : architectures.get(to).getLocations()) {
+            if (isOnMap(p)) {
+                goals.add(p.y * width + p.x);
+            }
+        }
+        int[] field = DistanceField.towards(tc, goals, blocked, fieldScratch.get());
+        fieldScratch.set(field);
+
+        int[] costs = new int[size];
+        boolean allReachable = true;
+        int maxCost = 0;
+        for (int from = 0; from < size; ++from) {
+            int best = UNREACHABLE;
+            for (Point p : architectures.get(from).getLocations()) {
+                if (isOnMap(p)) {
+                    best = Math.min(best, field[p.y * width + p.x]);
+                }
+            }
+            costs[from] = best;
+            if (best == UNREACHABLE) {
+                allReachable = false;
+            } else {
+                maxCost = Math.max(maxCost, best);
+            }
+        }
+
+        int x0 = width, y0 = height, x1 = -1, y1 = -1;
+        if (!allReachable) {
+            // opening a tile anywhere might connect the unreachable ones
+            x0 = 0;
+            y0 = 0;
+            x1 = width - 1;
+            y1 = height - 1;
+        } else {
+            for (int i = 0; i < field.length; ++i) {
+                if (field[i] <= maxCost) {
+                    int x = i % width, y = i / width;
+                    x0 = Math.min(x0, x);
+                    y0 = Math.min(y0, y);
+                    x1 = Math.max(x1, x);
+                    y1 = Math.max(y1, y);
+                }
+            }
+        }
+
+        if (columns.getAndSet(column, new Column(costs, x0, y0, x1, y1)) == null) {
+            unknownColumns.decrementAndGet();
+        }
+    }
+
+    private boolean isOnMap(Point p) {
+        return p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
+    }
+
+}
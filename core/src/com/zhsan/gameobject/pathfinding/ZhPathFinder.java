@@ -66,23 +66,12 @@ public class ZhPathFinder {
         private final int x, y;
         private final Troop kind;
 
-        private float cost;
-
         public Node(int x, int y, Troop kind) {
             this.x = x;
             this.y = y;
             this.kind = kind;
         }
 
-        public float getCost() {
-            return cost;
-        }
-
-        public Node setCost(float cost) {
-            this.cost = cost;
-            return this;
-        }
-
         @Override
         public int getIndex() {
             return pointToIndex(x, y);
@@ -124,7 +113,6 @@ public class ZhPathFinder {
                     "x=" + x +
                     ", y=" + y +
                     ", troop=" + kind +
-                    ", cost=" + cost +
                     '}';
         }
 
@@ -158,6 +146,7 @@ public class ZhPathFinder {
 
     private GameMap map;
     private GameScenario scen;
+    private Troop troop;
 
     private Array<Node> nodes = new Array<>();
     private IndexedAStarPathFinder<Node> pathFinder;
@@ -169,6 +158,7 @@ public class ZhPathFinder {
     public ZhPathFinder(GameScenario scen, GameMap map, Troop kind) {
         this.scen = scen;
         this.map = map;
+        this.troop = kind;
 
         for (int y = 0; y < map.getHeight(); ++y) {
             for (int x = 0; x < map.getWidth(); ++x) {
@@ -194,38 +184,7 @@ public class ZhPathFinder {
     }
 
     public List<Point> getPointsWithinCost(Point from, int maxCost) {
-        List<Point> result = new ArrayList<>();
-
-        Node start = nodes.get(pointToIndex(from.x, from.y));
-
-        // Uniform cost search getting all nodes within cost
-        PriorityQueue<Node> frontier = new PriorityQueue<>((x, y) -> Float.compare(x.cost, y.cost));
-        frontier.add(start);
-
-        Set<Node> explored = new HashSet<>();
-
-        do {
-            Node n = frontier.poll();
-            explored.add(n);
-            result.add(new Point(n.x, n.y));
-            for (Connection<Node> c : n.getConnections()) {
-                Node target = c.getToNode() == n ? c.getFromNode() : c.getToNode();
-                if (!explored.contains(target)) {
-                    if (!frontier.contains(target)) {
-                        if (n.getCost() + c.getCost() <= maxCost) {
-                            target.setCost(n.getCost() + c.getCost());
-                            frontier.add(target);
-                        }
-                    } else if (target.getCost() > n.getCost() + c.getCost()) {
-                        target.setCost(n.getCost() + c.getCost());
-                    }
-                }
-            }
-        } while (frontier.size() > 0);
-
-        explored.forEach(n -> n.setCost(0));
-
-        return result;
+        return scen.getReachableAreaFinder().find(troop, from, maxCost).getPoints();
     }
 
 }
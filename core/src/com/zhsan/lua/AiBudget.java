@@ -0,0 +1,137 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.Faction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many Lua instructions and how much wall-clock time one faction's AI may spend in a day, and how much it used.
+ * The budget is charged by a debug hook in the interpreter and checked on every call into Java. Once it is exceeded,
+ * the script is aborted with an Error, which pcall in the script cannot catch. A limit of 0 means no limit.
+ *
+ * Scripts compiled by LuaJC do not run the debug hook, so a loop in them that never calls into Java could not be
+ * stopped. They are therefore only run while the budget is unbounded.
+ */
+public final class AiBudget {
+
+    static final class Exceeded extends Error {
+        private static final long serialVersionUID = 1L;
+
+        private Exceeded(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final ThreadLocal<AiBudget> current = new ThreadLocal<>();
+
+    private final Faction faction;
+    private final long instructionLimit;
+    private final long timeLimit;
+
+    private long instructions;
+    private long start, end, deadline;
+    private volatile boolean cancelled;
+    private volatile String abortReason;
+
+    public AiBudget(Faction faction, long instructionLimit, long timeLimit, TimeUnit unit) {
+        this.faction = faction;
+        this.instructionLimit = instructionLimit;
+        this.timeLimit = unit.toNanos(timeLimit);
+    }
+
+    static AiBudget current() {
+        return current.get();
+    }
+
+    void enter() {
+        start = System.nanoTime();
+        deadline = start + timeLimit;
+        current.set(this);
+    }
+
+    void exit() {
+        end = System.nanoTime();
+        current.remove();
+    }
+
+    void add(int instructions) {
+        this.instructions += instructions;
+    }
+
+    void charge(int instructions) {
+        add(instructions);
+        check();
+    }
+
+    void check() {
+        if (abortReason != null) {
+            throw new Exceeded(abortReason);
+        }
+        if (cancelled) {
+            abort("cancelled");
+        } else if (instructionLimit > 0 && instructions > instructionLimit) {
+            abort("instruction budget of " + instructionLimit + " exceeded");
+        } else if (timeLimit > 0 && System.nanoTime() > deadline) {
+            abort("time budget of " + TimeUnit.NANOSECONDS.toMillis(timeLimit) + "ms exceeded");
+        }
+    }
+
+    private void abort(String reason) {
+        abortReason = reason;
+        throw new Exceeded(reason);
+    }
+
+    /**
+     * Whether there is an instruction or time limit to enforce
+     */
+    public boolean isBounded() {
+        return instructionLimit > 0 || timeLimit > 0;
+    }
+
+    /**
+     * Ask the script to stop at its next check, e.g. because the game is shutting down.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Faction getFaction() {
+        return faction;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getInstructionLimit() {
+        return instructionLimit;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((end > 0 ? end : System.nanoTime()) - start);
+    }
+
+    public boolean isAborted() {
+        return abortReason != null;
+    }
+
+    public String getAbortReason() {
+        return abortReason;
+    }
+
+    @Override
+    public String toString() {
+        return "AiBudget{" +
+                "faction=" + faction.getId() +
+                ", instructions=" + instructions + "/" + instructionLimit +
+                ", elapsed=" + getElapsedMillis() + "ms/" + TimeUnit.NANOSECONDS.toMillis(timeLimit) + "ms" +
+                (abortReason != null ? ", aborted=" + abortReason : "") +
+                '}';
+    }
+
+}
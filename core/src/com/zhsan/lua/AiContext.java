@@ -0,0 +1,93 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.*;
+
+import java.util.function.Consumer;
+
+/**
+ * What a FactionAI sees of its day: the scenario, its faction and budget, the common queries answered from the
+ * WorldSnapshot when there is one, and the queue its commands go to.
+ */
+public final class AiContext {
+
+    private final GameScenario scenario;
+    private final AiBudget budget;
+    private final CommandQueue queue;
+    private final AiProfile profile;
+
+    AiContext(GameScenario scenario, AiBudget budget, CommandQueue queue, AiProfile profile) {
+        this.scenario = scenario;
+        this.budget = budget;
+        this.queue = queue;
+        this.profile = profile;
+    }
+
+    public GameScenario getScenario() {
+        return scenario;
+    }
+
+    public Faction getFaction() {
+        return budget.getFaction();
+    }
+
+    public AiBudget getBudget() {
+        return budget;
+    }
+
+    CommandQueue getQueue() {
+        return queue;
+    }
+
+    AiProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Throw if the budget is used up or the run was cancelled. Long loops in Java should call this now and then.
+     */
+    public void check() {
+        budget.check();
+    }
+
+    public GameObjectList<Section> getSections() {
+        return WorldSnapshot.sectionsOf(getFaction());
+    }
+
+    public GameObjectList<Architecture> getArchitectures(Section s) {
+        return WorldSnapshot.architecturesOf(s);
+    }
+
+    public GameObjectList<Person> getPersons(Architecture a) {
+        return WorldSnapshot.personsOf(a);
+    }
+
+    /**
+     * Queue a change of the world, applied after every faction has finished if target still belongs to the faction.
+     * @param name what the command does, for the log
+     */
+    public <T> void command(T target, String name, Consumer<? super T> action) {
+        queue.add(target, name, new Object[0], () -> action.accept(target));
+    }
+
+    void run(FactionAI ai) {
+        budget.enter();
+        queue.enter();
+        if (profile != null) {
+            profile.enter();
+        }
+        try {
+            ai.run(this);
+        } catch (AiBudget.Exceeded e) {
+            // the budget remembers why, and the commands are dropped
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            budget.exit();
+            queue.exit();
+            if (profile != null) {
+                profile.exit(budget);
+            }
+        }
+    }
+
+}
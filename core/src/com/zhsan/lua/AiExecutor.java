@@ -0,0 +1,204 @@
+package com.zhsan.lua;
+
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.gameobject.Faction;
+import com.zhsan.gameobject.GameScenario;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the faction AIs of a day on a fixed pool with one thread per core. Every faction gets its own AiBudget, and
+ * run() only returns once every script has finished or been aborted, so no script outlives its day.
+ *
+ * The scripts only read the world while they run, and the expensive queries are answered from a WorldSnapshot taken
+ * before they start. Their AiCommands are applied once all of them are done, faction by
+ * faction in the order of faction id, each in the order issued.
+ *
+ * A day's AI can also be started in the background and applied later, so that it overlaps with other work, such as
+ * playing the day's animations.
+ */
+public final class AiExecutor {
+
+    private final ExecutorService pool;
+    private volatile List<AiBudget> lastBudgets = Collections.emptyList();
+    private volatile List<AiProfile> lastProfiles = Collections.emptyList();
+    private final List<AiBudget> running = new ArrayList<>();
+
+    public AiExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "Faction AI " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Run the AI of the given factions and wait for all of them.
+     * @return the budget usage of each faction, in the given order
+     */
+    public List<AiBudget> run(GameScenario scen, Collection<Faction> factions) {
+        return start(scen, factions).apply();
+    }
+
+    /**
+     * Take the snapshot and start the AI of the given factions in the background. Nothing is changed in the world
+     * until the returned run is applied.
+     */
+    public PendingRun start(GameScenario scen, Collection<Faction> factions) {
+        return new PendingRun(scen, factions);
+    }
+
+    /**
+     * The faction AIs of one day, started but not applied yet.
+     */
+    public final class PendingRun {
+
+        private final List<AiBudget> budgets = new ArrayList<>();
+        private final List<CommandQueue> queues = new ArrayList<>();
+        private final List<AiProfile> profiles = new ArrayList<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final GameScenario scen;
+        private final WorldSnapshot snapshot;
+        private boolean applied;
+
+        private PendingRun(GameScenario scen, Collection<Faction> factions) {
+            this.scen = scen;
+            for (Faction f : factions) {
+                budgets.add(new AiBudget(f, GlobalVariables.aiInstructionBudget, GlobalVariables.aiTimeout, TimeUnit.SECONDS));
+            }
+            synchronized (running) {
+                running.addAll(budgets);
+            }
+
+            snapshot = new WorldSnapshot(scen);
+            for (AiBudget b : budgets) {
+                CommandQueue queue = new CommandQueue(b.getFaction());
+                queues.add(queue);
+                AiProfile profile = GlobalVariables.aiProfiler ? new AiProfile(b.getFaction()) : null;
+                if (profile != null) {
+                    profiles.add(profile);
+                }
+                AiContext context = new AiContext(scen, b, queue, profile);
+                FactionAI ai = FactionAIs.of(scen, b.getFaction());
+                futures.add(pool.submit(() -> {
+                    snapshot.enter();
+                    try {
+                        context.run(ai);
+                    } finally {
+                        snapshot.exit();
+                    }
+                }));
+            }
+        }
+
+        /**
+         * The date of the snapshot the scripts plan against.
+         */
+        public LocalDate getDate() {
+            return snapshot.getDate();
+        }
+
+        public boolean isDone() {
+            return futures.stream().allMatch(Future::isDone);
+        }
+
+        /**
+         * Wait for every script to finish or be aborted, then apply their AiCommands. Applying a run again does
+         * nothing.
+         * @return the budget usage of each faction, in the order the factions were given
+         */
+        public synchronized List<AiBudget> apply() {
+            if (applied) {
+                return Collections.unmodifiableList(budgets);
+            }
+            applied = true;
+
+            boolean interrupted = false;
+            try {
+                for (int i = 0; i < futures.size(); ++i) {
+                    while (true) {
+                        try {
+                            futures.get(i).get();
+                            break;
+                        } catch (InterruptedException e) {
+                            // scripts stop at their next check, and must not keep running into the next day
+                            interrupted = true;
+                            budgets.forEach(AiBudget::cancel);
+                        } catch (ExecutionException e) {
+                            LuaAI.log(scen, budgets.get(i).getFaction(), AiLog.Level.ERROR, "-- failed: " + e.getCause());
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                synchronized (running) {
+                    running.removeAll(budgets);
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < budgets.size(); ++i) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingInt(i -> budgets.get(i).getFaction().getId()));
+            for (int i : order) {
+                LuaAI.applyCommands(queues.get(i), budgets.get(i));
+            }
+
+            for (AiBudget b : budgets) {
+                if (b.isAborted()) {
+                    LuaAI.log(scen, b.getFaction(), AiLog.Level.WARN, "-- aborted: " + b);
+                }
+            }
+
+            if (GlobalVariables.aiProfiler) {
+                AiProfile.writeReport(snapshot.getDate(), profiles);
+                for (AiProfile p : profiles) {
+                    LuaAI.log(scen, p.getFaction(), AiLog.Level.INFO,
+                            "-- profile: " + p.summary() + ", see " + AiProfile.getReportName(snapshot.getDate()));
+                }
+            }
+
+            lastBudgets = Collections.unmodifiableList(budgets);
+            lastProfiles = Collections.unmodifiableList(profiles);
+            return lastBudgets;
+        }
+
+    }
+
+    /**
+     * Budget usage of the last completed run.
+     */
+    public List<AiBudget> getLastBudgets() {
+        return lastBudgets;
+    }
+
+    /**
+     * Profiles of the last completed run, empty unless aiProfiler is on.
+     */
+    public List<AiProfile> getLastProfiles() {
+        return lastProfiles;
+    }
+
+    /**
+     * Abort every running script and stop the pool.
+     */
+    public void shutdown() {
+        synchronized (running) {
+            running.forEach(AiBudget::cancel);
+        }
+        pool.shutdown();
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.zhsan.lua;
+
+/**
+ * Heavy numeric work for the AI scripts, done in Java. A kernel is registered with AiKernels under its name, and its
+ * ExportToLua methods are reachable from every script as kernels.[name].[method]. It is shared by all factions and
+ * called from several threads at once, so it should keep no state of its own.
+ */
+public interface AiKernel {
+
+    String getName();
+
+}
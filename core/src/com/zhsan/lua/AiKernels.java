@@ -0,0 +1,43 @@
+package com.zhsan.lua;
+
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The AiKernels known by name: the built-in ones, those on the class path under
+ * META-INF/services/com.zhsan.lua.AiKernel, and those registered at run time.
+ */
+public final class AiKernels {
+
+    private static final Map<String, AiKernel> kernels = new ConcurrentHashMap<>();
+    static {
+        register(new InternalAffairsKernel());
+        for (AiKernel k : ServiceLoader.load(AiKernel.class)) {
+            register(k);
+        }
+    }
+
+    private AiKernels() {}
+
+    public static void register(AiKernel kernel) {
+        kernels.put(kernel.getName(), kernel);
+    }
+
+    public static AiKernel get(String name) {
+        return kernels.get(name);
+    }
+
+    /**
+     * The kernels global of a faction runtime. Kernels registered later are only seen by runtimes created later.
+     */
+    static LuaTable toLuaTable() {
+        LuaTable result = LuaValue.tableOf();
+        kernels.forEach((name, k) -> result.set(name, new LuaBinding.BoundObject(k)));
+        return result;
+    }
+
+}
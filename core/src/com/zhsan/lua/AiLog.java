@@ -0,0 +1,229 @@
+package com.zhsan.lua;
+
+import com.zhsan.common.GlobalVariables;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The log file of one faction's AI. Lines are put into a ring buffer without locking and written by a single
+ * background thread shared by all factions, which flushes once per batch. Once the file grows over aiLogMaxBytes, it
+ * is rotated to Faction[id].log.1 and so on, keeping aiLogBackups old files.
+ *
+ * The buffer has a single producer: a faction's log is only written by the thread running or applying its AI at
+ * that time. When the buffer is full, lines are dropped and counted rather than blocking the script.
+ */
+final class AiLog implements Closeable {
+
+    enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int CAPACITY = 8192;
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final List<AiLog> logs = new CopyOnWriteArrayList<>();
+    private static volatile Thread writer;
+
+    private final File file;
+    private final Level level;
+
+    private final String[] ring = new String[CAPACITY];
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private volatile boolean closed;
+
+    // only touched by the writer thread once the log is registered
+    private CountingStream stream;
+    private Writer out;
+
+    AiLog(File file) throws IOException {
+        this.file = file;
+        Level configured = parseLevel(GlobalVariables.aiLogLevel);
+        this.level = configured != null ? configured : Level.INFO;
+        open();
+        logs.add(this);
+        startWriter();
+        if (configured == null) {
+            warn("-- unknown aiLogLevel " + GlobalVariables.aiLogLevel + ", using " + level);
+        }
+    }
+
+    private static Level parseLevel(String name) {
+        if (name == null) return null;
+        for (Level l : Level.values()) {
+            if (l.name().equalsIgnoreCase(name.trim())) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    Level getLevel() {
+        return level;
+    }
+
+    boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    void log(Level level, String message) {
+        if (!isEnabled(level) || closed) return;
+
+        long h = head.get();
+        if (h - tail.get() >= CAPACITY) {
+            dropped.incrementAndGet();
+            return;
+        }
+        ring[(int) (h & (CAPACITY - 1))] = message;
+        head.lazySet(h + 1);
+
+        if (h - tail.get() >= CAPACITY / 2) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    void error(Throwable t) {
+        if (!isEnabled(Level.ERROR)) return;
+        StringWriter s = new StringWriter();
+        t.printStackTrace(new PrintWriter(s));
+        log(Level.ERROR, s.toString().trim());
+    }
+
+    /**
+     * Write the remaining lines and close the file. This does not wait for the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) return;
+        Thread t = new Thread(AiLog::writeLoop, "Faction AI log writer");
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(AiLog::drainAll));
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            LockSupport.parkNanos(FLUSH_INTERVAL);
+            drainAll();
+        }
+    }
+
+    private static synchronized void drainAll() {
+        for (AiLog log : logs) {
+            try {
+                log.drain();
+            } catch (IOException e) {
+                e.printStackTrace();
+                log.closed = true;
+                log.tail.set(log.head.get());
+            }
+            if (log.closed && log.head.get() == log.tail.get()) {
+                logs.remove(log);
+                log.closeFile();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        long t = tail.get();
+        long h = head.get();
+        int lost = dropped.getAndSet(0);
+        if (t == h && lost == 0) return;
+
+        for (; t < h; ++t) {
+            int i = (int) (t & (CAPACITY - 1));
+            out.write(ring[i]);
+            out.write(System.lineSeparator());
+            ring[i] = null;
+            if (stream.count >= GlobalVariables.aiLogMaxBytes) {
+                tail.lazySet(t + 1);
+                rotate();
+            }
+        }
+        tail.lazySet(t);
+        if (lost > 0) {
+            out.write("-- " + lost + " lines dropped" + System.lineSeparator());
+        }
+        out.flush();
+    }
+
+    private void open() throws IOException {
+        stream = new CountingStream(new FileOutputStream(file));
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        for (int i = GlobalVariables.aiLogBackups; i > 0; --i) {
+            File from = i == 1 ? file : new File(file.getPath() + "." + (i - 1));
+            File to = new File(file.getPath() + "." + i);
+            if (from.exists()) {
+                to.delete();
+                from.renameTo(to);
+            }
+        }
+        open();
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        private long count;
+
+        private CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
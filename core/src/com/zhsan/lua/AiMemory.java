@@ -0,0 +1,246 @@
+package com.zhsan.lua;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.zhsan.common.exception.FileReadException;
+import com.zhsan.common.exception.FileWriteException;
+import com.zhsan.gameobject.*;
+import org.luaj.vm2.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The memory global of each faction's AI: a Lua table that the scripts keep their plans in from one day to the next.
+ * It belongs to the scenario rather than the faction runtime, and is saved with the game as AiMemory.dat.
+ *
+ * Booleans, numbers, strings, tables and the game objects the scripts get from Java are kept; a table may be
+ * referred to more than once, or by itself. Functions and other values are left out with a warning, and a game
+ * object that no longer exists is read back as nil.
+ */
+public final class AiMemory {
+
+    public static final String SAVE_FILE = "AiMemory.dat";
+
+    private static final int VERSION = 1;
+
+    private static final byte NIL = 0, FALSE = 1, TRUE = 2, INT = 3, NUMBER = 4, STRING = 5, TABLE = 6, OBJECT = 7,
+            REF = 8;
+
+    private static final List<Class<? extends GameObject>> OBJECT_KINDS = Arrays.asList(
+            Faction.class, Section.class, Architecture.class, Person.class, Military.class, Troop.class,
+            MilitaryKind.class);
+
+    private final GameScenario scen;
+    private final Map<Integer, LuaTable> tables = new ConcurrentHashMap<>();
+
+    private AiMemory(GameScenario scen) {
+        this.scen = scen;
+    }
+
+    LuaTable of(Faction f) {
+        return tables.computeIfAbsent(f.getId(), id -> LuaValue.tableOf());
+    }
+
+    public static AiMemory load(FileHandle root, GameScenario scen) {
+        AiMemory result = new AiMemory(scen);
+
+        FileHandle f = root.child(SAVE_FILE);
+        if (!f.exists()) return result;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(f.read()))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown AI memory version " + version);
+            }
+            Reader reader = new Reader(in, scen);
+            int n = in.readInt();
+            for (int i = 0; i < n; ++i) {
+                int faction = in.readInt();
+                LuaValue table = reader.read();
+                if (table.istable()) {
+                    result.tables.put(faction, (LuaTable) table);
+                }
+            }
+        } catch (IOException e) {
+            throw new FileReadException(f.path(), e);
+        }
+
+        return result;
+    }
+
+    public void save(FileHandle root) {
+        write(root, toBytes());
+    }
+
+    /**
+     * The content of AiMemory.dat as of now, to be written later by write
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            Map<Integer, LuaTable> sorted = new TreeMap<>(tables);
+            out.writeInt(sorted.size());
+            Writer writer = new Writer(out, scen);
+            for (Map.Entry<Integer, LuaTable> e : sorted.entrySet()) {
+                out.writeInt(e.getKey());
+                writer.faction = scen.getFactions().get(e.getKey());
+                writer.write(e.getValue());
+            }
+        } catch (IOException e) {
+            throw new FileWriteException(SAVE_FILE, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void write(FileHandle root, byte[] content) {
+        FileHandle f = root.child(SAVE_FILE);
+        try {
+            f.writeBytes(content, false);
+        } catch (GdxRuntimeException e) {
+            throw new FileWriteException(f.path(), e);
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final GameScenario scen;
+        private final Map<LuaTable, Integer> written = new IdentityHashMap<>();
+        // whose memory is being written, to log what is left out
+        private Faction faction;
+
+        private Writer(DataOutputStream out, GameScenario scen) {
+            this.out = out;
+            this.scen = scen;
+        }
+
+        private boolean canWrite(LuaValue v) {
+            if (v.isnil() || v.isboolean() || v.isnumber() || v.isstring() || v.istable()) {
+                return true;
+            }
+            return v instanceof LuaBinding.BoundObject &&
+                    OBJECT_KINDS.contains(((LuaBinding.BoundObject) v).m_instance.getClass());
+        }
+
+        private void write(LuaValue v) throws IOException {
+            if (v.isnil()) {
+                out.writeByte(NIL);
+            } else if (v.isboolean()) {
+                out.writeByte(v.toboolean() ? TRUE : FALSE);
+            } else if (v.isint()) {
+                out.writeByte(INT);
+                out.writeInt(v.toint());
+            } else if (v.type() == LuaValue.TNUMBER) {
+                out.writeByte(NUMBER);
+                out.writeDouble(v.todouble());
+            } else if (v.isstring()) {
+                LuaString s = v.checkstring();
+                out.writeByte(STRING);
+                out.writeInt(s.m_length);
+                out.write(s.m_bytes, s.m_offset, s.m_length);
+            } else if (v.istable()) {
+                writeTable((LuaTable) v);
+            } else {
+                GameObject o = (GameObject) ((LuaBinding.BoundObject) v).m_instance;
+                out.writeByte(OBJECT);
+                out.writeByte(OBJECT_KINDS.indexOf(o.getClass()));
+                out.writeInt(o.getId());
+            }
+        }
+
+        private void writeTable(LuaTable t) throws IOException {
+            Integer ref = written.get(t);
+            if (ref != null) {
+                out.writeByte(REF);
+                out.writeInt(ref);
+                return;
+            }
+            written.put(t, written.size());
+
+            List<LuaValue> entries = new ArrayList<>();
+            LuaValue k = LuaValue.NIL;
+            while (true) {
+                Varargs next = t.next(k);
+                if ((k = next.arg1()).isnil()) break;
+                LuaValue v = next.arg(2);
+                if (canWrite(k) && canWrite(v)) {
+                    entries.add(k);
+                    entries.add(v);
+                } else if (faction != null) {
+                    LuaAI.log(scen, faction, AiLog.Level.WARN, "-- memory: left out " + k + " = " + v);
+                }
+            }
+
+            out.writeByte(TABLE);
+            out.writeInt(entries.size() / 2);
+            for (LuaValue e : entries) {
+                write(e);
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final GameScenario scen;
+        private final List<LuaTable> read = new ArrayList<>();
+
+        private Reader(DataInputStream in, GameScenario scen) {
+            this.in = in;
+            this.scen = scen;
+        }
+
+        private LuaValue read() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NIL: return LuaValue.NIL;
+                case FALSE: return LuaValue.FALSE;
+                case TRUE: return LuaValue.TRUE;
+                case INT: return LuaValue.valueOf(in.readInt());
+                case NUMBER: return LuaValue.valueOf(in.readDouble());
+                case STRING: {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    return LuaString.valueOf(bytes);
+                }
+                case TABLE: {
+                    LuaTable t = LuaValue.tableOf();
+                    read.add(t);
+                    int n = in.readInt();
+                    for (int i = 0; i < n; ++i) {
+                        LuaValue k = read();
+                        LuaValue v = read();
+                        if (!k.isnil()) {
+                            t.rawset(k, v);
+                        }
+                    }
+                    return t;
+                }
+                case OBJECT: {
+                    GameObject o = lookup(in.readByte(), in.readInt());
+                    return o == null ? LuaValue.NIL : new LuaBinding.BoundObject(o);
+                }
+                case REF:
+                    return read.get(in.readInt());
+                default:
+                    throw new IOException("Unknown AI memory tag " + tag);
+            }
+        }
+
+        private GameObject lookup(int kind, int id) throws IOException {
+            if (kind < 0 || kind >= OBJECT_KINDS.size()) {
+                throw new IOException("Unknown AI memory object kind " + kind);
+            }
+            Class<? extends GameObject> c = OBJECT_KINDS.get(kind);
+            if (c == Faction.class) return scen.getFactions().get(id);
+            if (c == Section.class) return scen.getSections().get(id);
+            if (c == Architecture.class) return scen.getArchitectures().get(id);
+            if (c == Person.class) return scen.getPersons().get(id);
+            if (c == Military.class) return scen.getMilitaries().get(id);
+            if (c == Troop.class) return scen.getTroops().get(id);
+            return scen.getMilitaryKinds().get(id);
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.Faction;
+import org.luaj.vm2.Prototype;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where one faction's AI spent its day, recorded when aiProfiler is on. Lua functions are sampled by the debug hook:
+ * every 128 instructions, the instructions and the wall time since the last sample are charged to the
+ * function on top of the stack, so a function's time includes the Java calls it makes. Each call of an exported Java
+ * method is timed on its own, so the report tells slow scripts apart from slow bindings.
+ *
+ * Scripts compiled by LuaJC do not run the debug hook; their time is only seen through the Java methods they call.
+ */
+public final class AiProfile {
+
+    public static final class FunctionStats {
+        private final String name;
+        private long calls, instructions, nanos, bindingCalls;
+
+        private FunctionStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getInstructions() {
+            return instructions;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public long getBindingCalls() {
+            return bindingCalls;
+        }
+    }
+
+    public static final class BindingStats {
+        private final String name;
+        private long calls, nanos;
+
+        private BindingStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    private static final ThreadLocal<AiProfile> current = new ThreadLocal<>();
+
+    private final Faction faction;
+
+    private final Map<Prototype, FunctionStats> functions = new IdentityHashMap<>();
+    private final FunctionStats outside = new FunctionStats("(not interpreted)");
+    private final Map<LuaBinding, BindingStats[]> bindings = new IdentityHashMap<>();
+
+    private Prototype[] stack = new Prototype[64];
+    private int depth;
+    private long lastSample;
+
+    private long instructions, wallNanos, bindingCalls, bindingNanos;
+
+    public AiProfile(Faction faction) {
+        this.faction = faction;
+    }
+
+    static AiProfile current() {
+        return current.get();
+    }
+
+    void enter() {
+        depth = 0;
+        lastSample = System.nanoTime();
+        current.set(this);
+    }
+
+    void exit(AiBudget budget) {
+        current.remove();
+        instructions = budget.getInstructions();
+        wallNanos = TimeUnit.MILLISECONDS.toNanos(budget.getElapsedMillis());
+    }
+
+    void onCall(Prototype p) {
+        push(p);
+        top().calls++;
+    }
+
+    /**
+     * A Java function such as pcall was called from Lua. It gets a frame of its own, so that its return is matched,
+     * but its time stays with the function that called it.
+     */
+    void onJavaCall() {
+        push(depth > 0 ? stack[depth - 1] : null);
+    }
+
+    private void push(Prototype p) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = p;
+    }
+
+    void onReturn() {
+        if (depth > 0) {
+            stack[--depth] = null;
+        }
+    }
+
+    void sample(int instructions) {
+        long now = System.nanoTime();
+        FunctionStats f = top();
+        f.instructions += instructions;
+        f.nanos += now - lastSample;
+        lastSample = now;
+    }
+
+    void onBindingCall(LuaBinding binding, int method, long nanos) {
+        BindingStats[] stats = bindings.computeIfAbsent(binding, b -> new BindingStats[b.size()]);
+        BindingStats s = stats[method];
+        if (s == null) {
+            s = stats[method] = new BindingStats(binding.getClassName() + "." + binding.getName(method));
+        }
+        s.calls++;
+        s.nanos += nanos;
+        bindingCalls++;
+        bindingNanos += nanos;
+        top().bindingCalls++;
+    }
+
+    private FunctionStats top() {
+        Prototype p = depth > 0 ? stack[depth - 1] : null;
+        if (p == null) return outside;
+        FunctionStats f = functions.get(p);
+        if (f == null) {
+            String source = new File(p.source.tojstring().replaceFirst("^[@=]", "")).getName();
+            f = new FunctionStats(p.linedefined == 0 ? source + ":main" : source + ":" + p.linedefined);
+            functions.put(p, f);
+        }
+        return f;
+    }
+
+    public Faction getFaction() {
+        return faction;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(wallNanos);
+    }
+
+    public long getBindingCalls() {
+        return bindingCalls;
+    }
+
+    public long getBindingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(bindingNanos);
+    }
+
+    /**
+     * Lua functions, the most expensive first.
+     */
+    public List<FunctionStats> getFunctions() {
+        List<FunctionStats> result = new ArrayList<>(functions.values());
+        if (outside.calls > 0 || outside.nanos > 0 || outside.bindingCalls > 0) {
+            result.add(outside);
+        }
+        result.sort(Comparator.comparingLong((FunctionStats f) -> f.nanos).reversed());
+        return result;
+    }
+
+    /**
+     * Exported Java methods, the most expensive first.
+     */
+    public List<BindingStats> getBindings() {
+        List<BindingStats> result = new ArrayList<>();
+        for (BindingStats[] stats : bindings.values()) {
+            for (BindingStats s : stats) {
+                if (s != null) {
+                    result.add(s);
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong((BindingStats b) -> b.nanos).reversed());
+        return result;
+    }
+
+    /**
+     * The totals of the day in one line, as they head the faction's part of the report.
+     */
+    String summary() {
+        return faction.getName() + " (" + faction.getId() + "): " + getMillis() + "ms, " +
+                instructions + " instructions, " + bindingCalls + " Java calls in " + getBindingMillis() + "ms";
+    }
+
+    private void write(PrintWriter out) {
+        out.println("== " + summary());
+        out.println(String.format("  %-48s %10s %12s %10s %10s", "function", "calls", "instructions", "ms", "java calls"));
+        for (FunctionStats f : getFunctions()) {
+            out.println(String.format("  %-48s %10d %12d %10.2f %10d", f.name, f.calls, f.instructions, f.nanos / 1e6, f.bindingCalls));
+        }
+        out.println(String.format("  %-48s %10s %10s", "java method", "calls", "ms"));
+        for (BindingStats b : getBindings()) {
+            out.println(String.format("  %-48s %10d %10.2f", b.name, b.calls, b.nanos / 1e6));
+        }
+        out.println();
+    }
+
+    static String getReportName(LocalDate date) {
+        return "Profile-" + date + ".txt";
+    }
+
+    /**
+     * Write the profiles of a day to Profile-[date].txt in the AI log directory, the slowest faction first.
+     */
+    static void writeReport(LocalDate date, List<AiProfile> profiles) {
+        List<AiProfile> sorted = new ArrayList<>(profiles);
+        sorted.sort(Comparator.comparingLong((AiProfile p) -> p.wallNanos).reversed());
+
+        File file = new File(LuaAI.LOGS + getReportName(date));
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (AiProfile p : sorted) {
+                p.write(out);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
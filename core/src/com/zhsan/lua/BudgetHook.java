@@ -0,0 +1,103 @@
+package com.zhsan.lua;
+
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.DebugLib;
+
+/**
+ * Charges interpreted instructions to the running AiBudget. It takes the place of the debug library in a faction's
+ * globals, but only counts, so it costs much less per instruction than the full library. It does not provide the
+ * debug table to scripts.
+ *
+ * When an AiProfile is set, it also tracks the Lua call stack and samples it.
+ */
+final class BudgetHook extends DebugLib {
+
+    private static final int CHECK_INTERVAL = 1024;
+    private static final int SAMPLE_INTERVAL = 128;
+
+    private AiBudget budget;
+    private int pending;
+
+    private AiProfile profile;
+    private int unsampled;
+
+    void setBudget(AiBudget budget) {
+        this.budget = budget;
+        this.pending = 0;
+    }
+
+    void setProfile(AiProfile profile) {
+        this.profile = profile;
+        this.unsampled = 0;
+    }
+
+    /**
+     * Whether the script must be interpreted, so that its instructions are charged or profiled
+     */
+    boolean isWatching() {
+        return (budget != null && budget.isBounded()) || profile != null;
+    }
+
+    /**
+     * Add the instructions not charged or sampled yet, without checking the budget.
+     */
+    void flush() {
+        if (budget != null) {
+            budget.add(pending);
+        }
+        pending = 0;
+        if (profile != null && unsampled > 0) {
+            profile.sample(unsampled);
+        }
+        unsampled = 0;
+    }
+
+    @Override
+    public LuaValue call(LuaValue modname, LuaValue env) {
+        return NIL;
+    }
+
+    @Override
+    public void onCall(LuaFunction f) {
+        // onReturn is called for Java functions too
+        if (profile != null) {
+            profile.onJavaCall();
+        }
+    }
+
+    @Override
+    public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+        if (profile != null) {
+            profile.onCall(c.p);
+        }
+    }
+
+    @Override
+    public void onInstruction(int pc, Varargs v, int top) {
+        if (profile != null && ++unsampled >= SAMPLE_INTERVAL) {
+            profile.sample(unsampled);
+            unsampled = 0;
+        }
+        if (++pending >= CHECK_INTERVAL && budget != null) {
+            int n = pending;
+            pending = 0;
+            budget.charge(n);
+        }
+    }
+
+    @Override
+    public void onReturn() {
+        if (profile != null) {
+            profile.onReturn();
+        }
+    }
+
+    @Override
+    public String traceback(int level) {
+        return "";
+    }
+
+}
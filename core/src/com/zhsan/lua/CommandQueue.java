@@ -0,0 +1,189 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.*;
+import org.luaj.vm2.LuaString;
+
+import java.util.*;
+
+/**
+ * The AiCommands issued by one faction's AI in a day, in the order they were issued. While the AI runs, the world
+ * is only read; the queue is applied afterwards, on a single thread. Each command is validated on application: it
+ * must target something the faction owns, and the method must not throw.
+ *
+ * A queued command shadows the getters it will change, so that the rest of the run sees its effect: a setX(value)
+ * the getX() of the same object, and the commands listed here the getters of the other objects they change.
+ */
+final class CommandQueue {
+
+    private static final ThreadLocal<CommandQueue> current = new ThreadLocal<>();
+
+    static final Object NO_SHADOW = new Object();
+
+    interface Shadowing {
+        void shadow(CommandQueue queue, Object target, Object[] args);
+    }
+
+    private static final Map<Class<?>, Map<String, Shadowing>> shadowings = new HashMap<>();
+    private static final Map<Class<?>, Set<String>> shadowedGetters = new HashMap<>();
+    static {
+        // a change of mayor demotes the old mayor, whom the script may ask for work right after
+        addShadowing(Architecture.class, "changeMayor", (q, t, a) ->
+                q.shadowMayorChange((Architecture) t, WorldSnapshot.personsOf((Architecture) t).get((Integer) a[0])));
+        addShadowing(Person.class, "setDoingWork", (q, t, a) -> {
+            Person p = (Person) t;
+            if (Person.DoingWork.MAYOR.toCSV().equals(a[0]) && p.getLocation() instanceof Architecture) {
+                q.shadowMayorChange((Architecture) p.getLocation(), p);
+            }
+        });
+        addShadowedGetter(Person.class, "getDoingWork");
+    }
+
+    private static void addShadowing(Class<?> klass, String command, Shadowing shadowing) {
+        shadowings.computeIfAbsent(klass, k -> new HashMap<>()).put(command, shadowing);
+    }
+
+    private static void addShadowedGetter(Class<?> klass, String getter) {
+        shadowedGetters.computeIfAbsent(klass, k -> new HashSet<>()).add(getter);
+    }
+
+    static Shadowing getShadowing(Class<?> klass, String command) {
+        for (Class<?> c = klass; c != null; c = c.getSuperclass()) {
+            Map<String, Shadowing> s = shadowings.get(c);
+            if (s != null && s.containsKey(command)) {
+                return s.get(command);
+            }
+        }
+        return null;
+    }
+
+    static boolean isShadowed(Class<?> klass, String getter) {
+        for (Class<?> c = klass; c != null; c = c.getSuperclass()) {
+            Set<String> s = shadowedGetters.get(c);
+            if (s != null && s.contains(getter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Command {
+        private final Object target;
+        private final String name;
+        private final Object[] args;
+        private final Runnable action;
+
+        private Command(Object target, String name, Object[] args, Runnable action) {
+            this.target = target;
+            this.name = name;
+            this.args = args;
+            this.action = action;
+        }
+
+        @Override
+        public String toString() {
+            String on = target instanceof GameObject ?
+                    target.getClass().getSimpleName() + " " + ((GameObject) target).getId() : String.valueOf(target);
+            return name + Arrays.toString(args) + " on " + on;
+        }
+    }
+
+    private final Faction faction;
+    private final List<Command> commands = new ArrayList<>();
+    private final Map<Object, Map<Integer, Object>> shadows = new IdentityHashMap<>();
+
+    CommandQueue(Faction faction) {
+        this.faction = faction;
+    }
+
+    static CommandQueue current() {
+        return current.get();
+    }
+
+    void enter() {
+        current.set(this);
+    }
+
+    void exit() {
+        current.remove();
+    }
+
+    Faction getFaction() {
+        return faction;
+    }
+
+    int size() {
+        return commands.size();
+    }
+
+    void add(Object target, String name, Object[] args, Runnable action) {
+        commands.add(new Command(target, name, args, action));
+    }
+
+    /**
+     * Until the queue is applied, the getter of the given target answers value to this faction.
+     */
+    void shadow(Object target, int getter, Object value) {
+        shadows.computeIfAbsent(target, k -> new HashMap<>()).put(getter, value);
+    }
+
+    Object getShadow(Object target, int getter) {
+        Map<Integer, Object> s = shadows.get(target);
+        if (s == null || !s.containsKey(getter)) return NO_SHADOW;
+        return s.get(getter);
+    }
+
+    private void shadowMayorChange(Architecture a, Person newMayor) {
+        if (newMayor == null) return;
+        int getter = LuaBinding.of(Person.class).indexOf(LuaString.valueOf("getDoingWork"));
+        String mayor = Person.DoingWork.MAYOR.toCSV();
+        for (Person p : WorldSnapshot.personsOf(a)) {
+            Object work = getShadow(p, getter);
+            if (work == NO_SHADOW) {
+                work = WorldSnapshot.currentValue(p, "getDoingWork");
+            }
+            if (work == WorldSnapshot.NO_VALUE) {
+                work = p.getDoingWork();
+            }
+            if (p != newMayor && mayor.equals(work)) {
+                shadow(p, getter, Person.DoingWork.NONE.toCSV());
+            }
+        }
+        shadow(newMayor, getter, mayor);
+    }
+
+    /**
+     * Apply and clear the queued commands.
+     * @return the commands that were rejected, with the reason
+     */
+    List<String> apply() {
+        List<String> rejected = new ArrayList<>();
+        for (Command c : commands) {
+            if (!isOwned(c.target)) {
+                rejected.add(c + ": not owned by " + faction.getName());
+                continue;
+            }
+            try {
+                c.action.run();
+            } catch (RuntimeException e) {
+                rejected.add(c + ": " + e);
+            }
+        }
+        clear();
+        return rejected;
+    }
+
+    void clear() {
+        commands.clear();
+        shadows.clear();
+    }
+
+    private boolean isOwned(Object target) {
+        if (target instanceof Faction) {
+            return target == faction;
+        } else if (target instanceof HasFaction) {
+            return ((HasFaction) target).getBelongedFaction() == faction;
+        }
+        return true;
+    }
+
+}
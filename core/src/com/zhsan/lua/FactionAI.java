@@ -0,0 +1,18 @@
+package com.zhsan.lua;
+
+/**
+ * The AI of a faction for one day. The default runs the Lua scripts; other implementations are written in Java and
+ * registered with FactionAIs, or found by ServiceLoader. A faction picks its AI with an "ai:[name]" token in its
+ * aiTags, otherwise factionAi in GlobalVariables applies.
+ *
+ * An implementation is shared by all factions and called from several threads at once, so it should keep no state
+ * of its own. It must not change the world directly: changes go through AiContext.command and are applied after
+ * every faction has finished.
+ */
+public interface FactionAI {
+
+    String getName();
+
+    void run(AiContext context);
+
+}
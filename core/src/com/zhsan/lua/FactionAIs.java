@@ -0,0 +1,72 @@
+package com.zhsan.lua;
+
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.gameobject.Faction;
+import com.zhsan.gameobject.GameScenario;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The FactionAIs known by name: the built-in ones, those on the class path under
+ * META-INF/services/com.zhsan.lua.FactionAI, and those registered at run time.
+ */
+public final class FactionAIs {
+
+    private static final String TAG = "ai:";
+
+    private static final Map<String, FactionAI> ais = new ConcurrentHashMap<>();
+    static {
+        register(new LuaFactionAI());
+        register(new InternalAffairsAI());
+        for (FactionAI ai : ServiceLoader.load(FactionAI.class)) {
+            register(ai);
+        }
+    }
+
+    private FactionAIs() {}
+
+    public static void register(FactionAI ai) {
+        ais.put(ai.getName(), ai);
+    }
+
+    public static FactionAI get(String name) {
+        return ais.get(name);
+    }
+
+    /**
+     * The AI chosen by the faction's aiTags, or factionAi in GlobalVariables. An unknown name falls back to Lua, with
+     * a warning in the faction's AI log.
+     */
+    public static FactionAI of(GameScenario scen, Faction f) {
+        String name = GlobalVariables.factionAi;
+        String tags = f.getAiTags();
+        if (tags != null) {
+            for (String tag : tags.trim().split("\\s+")) {
+                if (tag.startsWith(TAG)) {
+                    name = tag.substring(TAG.length());
+                }
+            }
+        }
+        FactionAI ai = ais.get(name);
+        if (ai == null) {
+            LuaAI.log(scen, f, AiLog.Level.WARN, "-- unknown faction AI " + name + ", using " + LuaFactionAI.NAME);
+            ai = ais.get(LuaFactionAI.NAME);
+        }
+        return ai;
+    }
+
+    /**
+     * Run the AI of a single faction and apply its commands right away.
+     */
+    public static AiBudget run(GameScenario scen, Faction f) {
+        AiBudget budget = new AiBudget(f, GlobalVariables.aiInstructionBudget, GlobalVariables.aiTimeout, TimeUnit.SECONDS);
+        CommandQueue queue = new CommandQueue(f);
+        new AiContext(scen, budget, queue, null).run(of(scen, f));
+        LuaAI.applyCommands(queue, budget);
+        return budget;
+    }
+
+}
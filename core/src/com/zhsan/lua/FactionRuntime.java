@@ -0,0 +1,139 @@
+package com.zhsan.lua;
+
+import com.zhsan.common.GlobalVariables;
+import com.zhsan.gameobject.Faction;
+import com.zhsan.gameobject.GameScenario;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.*;
+
+/**
+ * The Lua environment of one faction's AI. It lives as long as the faction, so globals set by the scripts survive
+ * from one day to the next; each day only the entry chunk is run again.
+ */
+final class FactionRuntime implements Closeable {
+
+    private final GameScenario scenario;
+    private final Faction faction;
+    private final Globals globals;
+    private final AiLog logger;
+    private final BudgetHook hook = new BudgetHook();
+    private boolean warnedJit;
+
+    FactionRuntime(GameScenario scen, Faction f) throws IOException {
+        this.scenario = scen;
+        this.faction = f;
+        this.logger = new AiLog(new File(LuaAI.LOGS + "Faction" + f.getId() + ".log"));
+        this.globals = JsePlatform.standardGlobals();
+        globals.debuglib = hook;
+
+        globals.set("PATH", LuaAI.PATH);
+        globals.set("dump", LuaAI.createDumpFunction(logger));
+        globals.set("print", createLogFunction(AiLog.Level.INFO));
+        globals.set("log", createLogTable());
+        globals.set("dofile", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue arg) {
+                return loadChunk(arg.checkjstring()).call();
+            }
+        });
+
+        globals.set("kernels", AiKernels.toLuaTable());
+        globals.set("memory", scen.getAiMemory().of(f));
+        globals.set("faction", new LuaBinding.BoundObject(f));
+        globals.set("scenario", new LuaBinding.BoundObject(scen));
+    }
+
+    private LuaValue createLogFunction(AiLog.Level level) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                if (!logger.isEnabled(level)) return NONE;
+                StringBuilder line = new StringBuilder();
+                for (int i = 1; i <= args.narg(); ++i) {
+                    if (i > 1) {
+                        line.append('\t');
+                    }
+                    line.append(args.arg(i).tojstring());
+                }
+                logger.log(level, line.toString());
+                return NONE;
+            }
+        };
+    }
+
+    /**
+     * log.debug(...), log.info(...), log.warn(...) and log.error(...), with log.DEBUG etc. and log.level, so that a
+     * script can skip building a message nobody will read: if log.level <= log.DEBUG then ... end
+     */
+    private LuaTable createLogTable() {
+        LuaTable log = LuaValue.tableOf();
+        for (AiLog.Level level : AiLog.Level.values()) {
+            log.set(level.name(), level.ordinal());
+            if (level != AiLog.Level.OFF) {
+                log.set(level.name().toLowerCase(), createLogFunction(level));
+            }
+        }
+        log.set("level", logger.getLevel().ordinal());
+        log.set("dump", LuaValue.valueOf(GlobalVariables.aiLogDump && logger.isEnabled(AiLog.Level.INFO)));
+        return log;
+    }
+
+    private LuaValue loadChunk(String path) {
+        if (GlobalVariables.luaJit) {
+            // compiled chunks do not run the debug hook, so neither the budget nor the profiler would see them
+            if (hook.isWatching()) {
+                if (!warnedJit) {
+                    warnedJit = true;
+                    logger.warn("-- luaJit is ignored while the AI budget is bounded or the profiler is on");
+                }
+            } else {
+                LuaFunction chunk = ScriptCache.getCompiled(path, globals, logger);
+                if (chunk != null) {
+                    return chunk;
+                }
+            }
+        }
+        try {
+            Prototype p = ScriptCache.get(path);
+            return globals.loader.load(p, p.source.tojstring(), globals);
+        } catch (IOException e) {
+            throw new LuaError("cannot open " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run the entry chunk within the context's budget, which has been entered already.
+     */
+    void run(AiContext context) {
+        AiBudget budget = context.getBudget();
+        logger.info("-- " + faction.getName() + ", " + scenario.getGameDate());
+        hook.setBudget(budget);
+        hook.setProfile(context.getProfile());
+        try {
+            loadChunk(LuaAI.PATH + LuaAI.FACTION_AI).call();
+        } catch (LuaError e) {
+            logger.error(e);
+        } catch (AiBudget.Exceeded e) {
+            logger.warn("-- aborted: " + e.getMessage());
+        } finally {
+            hook.flush();
+            hook.setBudget(null);
+            hook.setProfile(null);
+        }
+        logger.info("-- " + budget + ", " + context.getQueue().size() + " commands queued");
+    }
+
+    void log(AiLog.Level level, String message) {
+        logger.log(level, message);
+    }
+
+    @Override
+    public void close() {
+        logger.close();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.Architecture;
+import com.zhsan.gameobject.GameObjectList;
+import com.zhsan.gameobject.Person;
+import com.zhsan.gameobject.Section;
+
+import java.util.*;
+
+/**
+ * The internal affairs of architectureAI.lua in Java: the person with the best internal abilities becomes mayor,
+ * and the others are handed out greedily, the best free person to the lowest-valued work, until nobody is left.
+ * Select it with "ai:internal" in a faction's aiTags.
+ */
+public final class InternalAffairsAI implements FactionAI {
+
+    public static final String NAME = "internal";
+
+    private static final Person.DoingWork[] WORKS = {
+            Person.DoingWork.AGRICULTURE, Person.DoingWork.COMMERCE, Person.DoingWork.TECHNOLOGY,
+            Person.DoingWork.MORALE, Person.DoingWork.ENDURANCE
+    };
+
+    private final InternalAffairsKernel kernel = new InternalAffairsKernel();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void run(AiContext context) {
+        for (Section s : context.getSections()) {
+            for (Architecture a : context.getArchitectures(s)) {
+                GameObjectList<Person> persons = context.getPersons(a);
+                if (persons.size() > 0) {
+                    assignWork(context, a, persons);
+                }
+                context.check();
+            }
+        }
+    }
+
+    private void assignWork(AiContext context, Architecture a, GameObjectList<Person> persons) {
+        Map<Person, Person.DoingWork> work = new HashMap<>();
+
+        Person mayor = a.getMayor();
+        if (a.canChangeMayorToOther()) {
+            Person candidate = kernel.pickMayor(persons);
+            if (candidate != null && candidate != mayor) {
+                context.command(a, "changeMayor", x -> x.changeMayor(candidate.getId()));
+                mayor = candidate;
+            }
+        }
+        if (mayor != null) {
+            work.put(mayor, Person.DoingWork.MAYOR);
+        }
+
+        List<Person.DoingWork> works = new ArrayList<>(Arrays.asList(WORKS));
+        works.sort(Comparator.comparingDouble(w -> getValue(a, w)));
+
+        Map<Person.DoingWork, List<Person>> ranked = new EnumMap<>(Person.DoingWork.class);
+        for (Person.DoingWork w : works) {
+            ranked.put(w, kernel.rankPersons(persons, w));
+        }
+
+        boolean assignedAnybody = true;
+        while (assignedAnybody) {
+            assignedAnybody = false;
+            for (Person.DoingWork w : works) {
+                for (Person p : ranked.get(w)) {
+                    if (!work.containsKey(p)) {
+                        work.put(p, w);
+                        assignedAnybody = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (Person p : persons) {
+            Person.DoingWork w = work.get(p);
+            if (w != null && w != Person.DoingWork.MAYOR && w != p.getDoingWorkType()) {
+                context.command(p, "setDoingWork", x -> x.setDoingWork(w));
+            }
+        }
+    }
+
+    private static float getValue(Architecture a, Person.DoingWork work) {
+        switch (work) {
+            case AGRICULTURE: return a.getAgriculture();
+            case COMMERCE: return a.getCommerce();
+            case TECHNOLOGY: return a.getTechnology();
+            case MORALE: return a.getMorale();
+            case ENDURANCE: return a.getEndurance();
+            default: return 0;
+        }
+    }
+
+}
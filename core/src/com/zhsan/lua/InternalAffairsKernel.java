@@ -0,0 +1,65 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.Architecture;
+import com.zhsan.gameobject.GameObjectList;
+import com.zhsan.gameobject.Person;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Scores persons for the internal works of an architecture, as kernels.internal in the scripts.
+ */
+public final class InternalAffairsKernel implements AiKernel {
+
+    public static final String NAME = "internal";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public static int getAbility(Person p, Person.DoingWork work) {
+        switch (work) {
+            case AGRICULTURE: return p.getAgricultureAbility();
+            case COMMERCE: return p.getCommerceAbility();
+            case TECHNOLOGY: return p.getTechnologyAbility();
+            case MORALE: return p.getMoraleAbility();
+            case ENDURANCE: return p.getEnduranceAbility();
+            case RECRUIT: return p.getRecruitAbility();
+            case TRAINING: return p.getTrainingAbility();
+            case MAYOR: return getInternalAbility(p);
+            default: return 0;
+        }
+    }
+
+    public static int getInternalAbility(Person p) {
+        return p.getAgricultureAbility() + p.getCommerceAbility() + p.getTechnologyAbility() +
+                p.getMoraleAbility() + p.getEnduranceAbility();
+    }
+
+    /**
+     * The person in the architecture with the best internal abilities in total, or nil if there is nobody
+     */
+    @LuaAI.ExportToLua
+    public Person pickMayor(Architecture a) {
+        return pickMayor(WorldSnapshot.personsOf(a));
+    }
+
+    public Person pickMayor(GameObjectList<Person> persons) {
+        return persons.max(Comparator.comparingInt(InternalAffairsKernel::getInternalAbility), null);
+    }
+
+    /**
+     * The persons in the architecture, the best at the given work first
+     */
+    @LuaAI.ExportToLua
+    public List<Person> rankPersons(Architecture a, String work) {
+        return rankPersons(WorldSnapshot.personsOf(a), Person.DoingWork.fromCSV(work));
+    }
+
+    public List<Person> rankPersons(GameObjectList<Person> persons, Person.DoingWork work) {
+        return persons.sort(Comparator.comparingInt((Person p) -> getAbility(p, work)).reversed());
+    }
+
+}
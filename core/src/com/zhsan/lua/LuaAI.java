@@ -1,5 +1,6 @@
 package com.zhsan.lua;
 
+import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Paths;
 import com.zhsan.gameobject.Faction;
 import com.zhsan.gameobject.GameObject;
@@ -7,21 +8,13 @@ import com.zhsan.gameobject.GameObjectList;
 import com.zhsan.gameobject.GameScenario;
 import org.luaj.vm2.*;
 import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.VarArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
-import org.luaj.vm2.lib.jse.JsePlatform;
 
 import java.io.*;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.EnumSet;
-import java.util.Set;
+import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
@@ -35,89 +28,121 @@ public final class LuaAI {
 
     public static final String PATH = Paths.LUA + "AI" + File.separator;
     public static final String LOGS = PATH + "logs" + File.separator;
+    public static final String CLASSES = PATH + "classes" + File.separator;
 
     public static final String FACTION_AI = "ZHSanFactionAI.lua";
 
     private LuaAI(){}
 
-    public static void runFactionAi(GameScenario scen, Faction f) {
-        try (PrintWriter logger = new PrintWriter(new OutputStreamWriter(new FileOutputStream(LOGS + "Faction" + f.getId() + ".log"), "UTF-8"), true)) {
-            Globals globals = JsePlatform.standardGlobals();
+    private static final Map<Faction, FactionRuntime> runtimes = Collections.synchronizedMap(new WeakHashMap<>());
 
-            globals.set("PATH", PATH);
-            globals.set("dump", new OneArgFunction() {
+    /**
+     * Apply the commands of a finished faction AI. The commands of an aborted script are dropped.
+     */
+    static void applyCommands(CommandQueue queue, AiBudget budget) {
+        FactionRuntime runtime = runtimes.get(queue.getFaction());
+        if (budget.isAborted()) {
+            if (runtime != null) {
+                runtime.log(AiLog.Level.WARN, "-- " + queue.size() + " commands dropped");
+            }
+            queue.clear();
+            return;
+        }
+
+        List<String> rejected = queue.apply();
+        if (runtime != null) {
+            rejected.forEach(r -> runtime.log(AiLog.Level.WARN, "-- rejected " + r));
+        }
+    }
 
-                private String ns(int n, String s) {
-                    return new String(new char[n]).replace("\0", s);
+    static FactionRuntime getRuntime(GameScenario scen, Faction f) {
+        synchronized (runtimes) {
+            FactionRuntime runtime = runtimes.get(f);
+            if (runtime == null) {
+                try {
+                    runtime = new FactionRuntime(scen, f);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
                 }
+                runtimes.put(f, runtime);
+            }
+            return runtime;
+        }
+    }
+
+    /**
+     * Write to the log of the faction's AI, whichever FactionAI it runs. The log has a single writer, so this must not
+     * be called while the faction's AI runs on another thread.
+     */
+    static void log(GameScenario scen, Faction f, AiLog.Level level, String message) {
+        FactionRuntime runtime = getRuntime(scen, f);
+        if (runtime != null) {
+            runtime.log(level, message);
+        }
+    }
 
-                private void dump(int indent, LuaValue arg) {
-                    if (arg.istable()) {
-                        LuaTable table = arg.checktable();
-                        for (int i = 0; i < table.keyCount(); ++i) {
-                            LuaValue key = table.keys()[i];
-                            LuaValue value = table.get(key);
-                            if (value.istable()) {
-                                logger.println(ns(indent, " ") + key + " = ");
-                                dump(indent + 4, value);
-                            } else if (value.isfunction()) {
-                                if (key.tojstring().startsWith("get")) {
-                                    LuaValue result;
-                                    try {
-                                        result = value.call();
-                                        if (result.istable()) {
-                                            logger.println(ns(indent, " ") + key + " = ");
-                                            dump(indent + 4, result);
-                                        } else {
-                                            logger.println(ns(indent, " ") + key + " = " + result);
-                                        }
-                                    } catch (IllegalArgumentException e) {
-                                        logger.println(ns(indent, " ") + key + " = " + value);
-                                    }
-                                } else {
-                                    logger.println(ns(indent, " ") + key + " = " + value);
-                                }
-                            } else {
-                                logger.println(ns(indent, " ") + key + " = " + value);
-                            }
+    /**
+     * Close every faction runtime, e.g. when another scenario is loaded.
+     */
+    public static void closeRuntimes() {
+        synchronized (runtimes) {
+            runtimes.values().forEach(FactionRuntime::close);
+            runtimes.clear();
+        }
+    }
+
+    /**
+     * dump(value) logs a table or a Java object recursively at INFO, calling every getter of an object. It does
+     * nothing when aiLogDump is off, or the log level is above INFO.
+     */
+    static LuaValue createDumpFunction(AiLog logger) {
+        boolean enabled = GlobalVariables.aiLogDump && logger.isEnabled(AiLog.Level.INFO);
+        return new OneArgFunction() {
+
+            private String ns(int n, String s) {
+                return new String(new char[n]).replace("\0", s);
+            }
+
+            private void dump(int indent, LuaValue arg) {
+                if (arg.istable()) {
+                    LuaTable table = arg.checktable();
+                    for (int i = 0; i < table.keyCount(); ++i) {
+                        LuaValue key = table.keys()[i];
+                        dumpEntry(indent, key.tojstring(), table.get(key));
+                    }
+                } else if (arg instanceof LuaBinding.BoundObject) {
+                    LuaBinding binding = ((LuaBinding.BoundObject) arg).getBinding();
+                    for (int i = 0; i < binding.size(); ++i) {
+                        String name = binding.getName(i);
+                        if (name.startsWith("get") && binding.getParameterCount(i) == 0) {
+                            dumpEntry(indent, name, arg.get(name).call());
+                        } else {
+                            logger.info(ns(indent, " ") + name + " = " + arg.get(name));
                         }
-                    } else {
-                        logger.println(arg);
                     }
+                } else {
+                    logger.info(arg.tojstring());
                 }
+            }
 
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    dump(0, arg);
-                    return NIL;
-                }
-            });
-            globals.set("print", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    logger.println(arg);
-                    return NIL;
+            private void dumpEntry(int indent, String key, LuaValue value) {
+                if (value.istable() || value instanceof LuaBinding.BoundObject) {
+                    logger.info(ns(indent, " ") + key + " = ");
+                    dump(indent + 4, value);
+                } else {
+                    logger.info(ns(indent, " ") + key + " = " + value);
                 }
-            });
-
-            LuaTable factionTable = LuaValue.tableOf();
-            LuaAI.processAnnotations(factionTable, Faction.class, f);
-            globals.set("faction", factionTable);
-
-            LuaTable scenarioTable = LuaValue.tableOf();
-            LuaAI.processAnnotations(scenarioTable, GameScenario.class, scen);
-            globals.set("scenario", scenarioTable);
-
-            LuaValue chunk = globals.loadfile(PATH + FACTION_AI);
+            }
 
-            try {
-                chunk.call();
-            } catch (LuaError e) {
-                e.printStackTrace(logger);
+            @Override
+            public LuaValue call(LuaValue arg) {
+                if (enabled) {
+                    dump(0, arg);
+                }
+                return NIL;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        };
     }
 
     static class LuaTableCollector implements Collector<LuaTable, LuaTable, LuaTable> {
@@ -159,7 +184,15 @@ public final class LuaAI {
     @Target({ElementType.METHOD})
     public @interface ExportToLua{}
 
-    private static LuaValue toLuaValue(Object obj) {
+    /**
+     * An exported method that changes the world. When called by a faction AI, it is queued and applied after every
+     * faction has finished. A setX(value) command is seen by the faction's own calls to getX() in the meantime.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD})
+    public @interface AiCommand{}
+
+    static LuaValue toLuaValue(Object obj) {
         if (obj instanceof Double) {
             return LuaValue.valueOf((Double) obj);
         } else if (obj instanceof Float) {
@@ -181,25 +214,63 @@ public final class LuaAI {
         } else if (obj == null) {
             return LuaValue.NIL;
         } else if (obj instanceof GameObjectList) {
-            GameObjectList<?> list = (GameObjectList) obj;
-            if (list.size() == 0) {
-                return LuaValue.tableOf();
+            return new LuaList((GameObjectList<?>) obj);
+        } else if (obj instanceof GameObject) {
+            return new LuaBinding.BoundObject(obj);
+        } else if (obj instanceof int[]) {
+            int[] array = (int[]) obj;
+            LuaValue[] values = new LuaValue[array.length];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = LuaValue.valueOf(array[i]);
             }
-            LuaTable table = LuaValue.tableOf();
-            int index = 0;
-            for (GameObject i : list) {
-                LuaTable child = LuaValue.tableOf();
-                LuaAI.processAnnotations(child, i.getClass(), i);
-                table.set(index, child);
-                index++;
+            return LuaValue.listOf(values);
+        } else if (obj instanceof double[]) {
+            double[] array = (double[]) obj;
+            LuaValue[] values = new LuaValue[array.length];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = LuaValue.valueOf(array[i]);
             }
-            return table;
+            return LuaValue.listOf(values);
+        } else if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            LuaValue[] values = new LuaValue[list.size()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = toLuaValue(list.get(i));
+            }
+            return LuaValue.listOf(values);
         } else {
-            throw new IllegalArgumentException("toLuaValue only accept strings, primitives, GameObjectLists or null. " +
+            throw new IllegalArgumentException("toLuaValue only accept strings, primitives, primitive arrays, GameObjects, GameObjectLists, Lists or null. " +
                     obj + "(" + obj.getClass().getName() + ") received.");
         }
     }
 
+    static Object fromLuaValue(LuaValue val, Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return val.checkint();
+        } else if (type == long.class || type == Long.class) {
+            return val.checklong();
+        } else if (type == float.class || type == Float.class) {
+            return (float) val.checkdouble();
+        } else if (type == double.class || type == Double.class) {
+            return val.checkdouble();
+        } else if (type == boolean.class || type == Boolean.class) {
+            return val.toboolean();
+        } else if (type == String.class) {
+            return val.isnil() ? null : val.checkjstring();
+        } else if (type == int[].class) {
+            LuaTable table = val.checktable();
+            int[] result = new int[table.length()];
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = table.get(i + 1).checkint();
+            }
+            return result;
+        } else if (val instanceof LuaBinding.BoundObject && type.isInstance(((LuaBinding.BoundObject) val).m_instance)) {
+            return ((LuaBinding.BoundObject) val).m_instance;
+        } else {
+            return fromLuaValue(val);
+        }
+    }
+
     private static Object fromLuaValue(LuaValue val) {
         if (val.isboolean()) {
             return val.toboolean();
@@ -217,31 +288,4 @@ public final class LuaAI {
         }
     }
 
-    static void processAnnotations(LuaTable table, Class<?> klass, Object obj) {
-        for (Method m : klass.getMethods()) {
-           if (m.isAnnotationPresent(ExportToLua.class)) {
-               table.set(m.getName(), new VarArgFunction() {
-                   @Override
-                   public Varargs invoke(Varargs args) {
-                       Object[] objArgs = new Object[args.narg()];
-                       if (args.narg() == 1) {
-                            objArgs[0] = fromLuaValue(args.arg1());
-                       } else {
-                           for (int i = 0; i < args.narg(); ++i) {
-                               objArgs[i] = fromLuaValue(args.arg(i));
-                           }
-                       }
-                       Object result;
-                       try {
-                           result = m.invoke(obj, objArgs);
-                       } catch (IllegalAccessException | InvocationTargetException e) {
-                           throw new RuntimeException("Exception occurred invoking java method " + m + " with args " + Arrays.toString(objArgs), e);
-                       }
-                       return toLuaValue(result);
-                   }
-               });
-           }
-        }
-    }
-
 }
@@ -0,0 +1,295 @@
+package com.zhsan.lua;
+
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * The methods of a class marked with ExportToLua, resolved once per class into method handles. All objects of the
+ * class share the binding's metatable; an object crosses into Lua as a single BoundObject, and a method is only
+ * bound to it when a script first looks the method up.
+ */
+final class LuaBinding {
+
+    private static final ClassValue<LuaBinding> bindings = new ClassValue<LuaBinding>() {
+        @Override
+        protected LuaBinding computeValue(Class<?> type) {
+            return new LuaBinding(type);
+        }
+    };
+
+    static LuaBinding of(Class<?> klass) {
+        return bindings.get(klass);
+    }
+
+    private final Class<?> klass;
+    private final String[] names;
+    private final LuaString[] luaNames;
+    private final Method[] methods;
+    private final MethodHandle[] handles;
+    private final boolean[] commands;
+    private final int[] shadowedGetters;
+    private final boolean[] shadowed;
+    private final CommandQueue.Shadowing[] shadowings;
+    private final WorldSnapshot.Query[] snapshotQueries;
+    private final Map<LuaValue, Integer> index = new HashMap<>();
+    private final LuaTable metatable;
+
+    private LuaBinding(Class<?> klass) {
+        this.klass = klass;
+
+        Map<String, Method> exported = new TreeMap<>();
+        for (Method m : klass.getMethods()) {
+            if (m.isAnnotationPresent(LuaAI.ExportToLua.class) && !m.isBridge() && !Modifier.isStatic(m.getModifiers())) {
+                exported.put(m.getName(), m);
+            }
+        }
+
+        int n = exported.size();
+        this.names = new String[n];
+        this.luaNames = new LuaString[n];
+        this.methods = new Method[n];
+        this.handles = new MethodHandle[n];
+        this.commands = new boolean[n];
+        this.shadowedGetters = new int[n];
+        this.shadowed = new boolean[n];
+        this.shadowings = new CommandQueue.Shadowing[n];
+        this.snapshotQueries = new WorldSnapshot.Query[n];
+
+        int i = 0;
+        for (Map.Entry<String, Method> e : exported.entrySet()) {
+            names[i] = e.getKey();
+            luaNames[i] = LuaString.valueOf(e.getKey());
+            methods[i] = e.getValue();
+            handles[i] = toHandle(e.getValue());
+            index.put(luaNames[i], i);
+            commands[i] = e.getValue().isAnnotationPresent(LuaAI.AiCommand.class);
+            shadowed[i] = CommandQueue.isShadowed(klass, e.getKey());
+            if (commands[i]) {
+                shadowings[i] = CommandQueue.getShadowing(klass, e.getKey());
+            }
+            snapshotQueries[i] = WorldSnapshot.getQuery(klass, e.getKey());
+            i++;
+        }
+
+        // a queued setX(value) answers later getX() calls of the same faction
+        for (i = 0; i < n; ++i) {
+            shadowedGetters[i] = -1;
+            if (commands[i] && names[i].startsWith("set") && methods[i].getParameterCount() == 1) {
+                Integer getter = index.get(LuaString.valueOf("get" + names[i].substring(3)));
+                if (getter != null && methods[getter].getParameterCount() == 0) {
+                    shadowedGetters[i] = getter;
+                    shadowed[getter] = true;
+                }
+            }
+        }
+
+        this.metatable = LuaValue.tableOf();
+        metatable.set(LuaValue.INDEX, new TwoArgFunction() {
+            @Override
+            public LuaValue call(LuaValue self, LuaValue key) {
+                return self instanceof BoundObject ? ((BoundObject) self).get(key) : NIL;
+            }
+        });
+        metatable.set(LuaValue.NEWINDEX, new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                throw new LuaError("cannot assign field " + args.arg(2) + " of " + LuaBinding.this.klass.getSimpleName());
+            }
+        });
+        metatable.set("__name", LuaValue.valueOf(klass.getSimpleName()));
+    }
+
+    // (Object target, Object[] args) -> Object, so that every method is called the same way
+    private static MethodHandle toHandle(Method m) {
+        try {
+            m.setAccessible(true);
+            MethodHandle h = MethodHandles.lookup().unreflect(m);
+            int arity = m.getParameterCount();
+            return h.asType(MethodType.genericMethodType(arity + 1)).asSpreader(Object[].class, arity);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new IllegalStateException("Cannot bind " + m + " for Lua", e);
+        }
+    }
+
+    LuaTable getMetatable() {
+        return metatable;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getClassName() {
+        return klass.getSimpleName();
+    }
+
+    String getName(int method) {
+        return names[method];
+    }
+
+    int getParameterCount(int method) {
+        return methods[method].getParameterCount();
+    }
+
+    int indexOf(LuaValue name) {
+        Integer i = index.get(name);
+        return i == null ? -1 : i;
+    }
+
+    Varargs invoke(int method, Object target, Varargs args) {
+        AiBudget budget = AiBudget.current();
+        if (budget != null) {
+            budget.check();
+        }
+
+        AiProfile profile = AiProfile.current();
+        if (profile == null) {
+            return dispatch(method, target, args);
+        }
+        long start = System.nanoTime();
+        try {
+            return dispatch(method, target, args);
+        } finally {
+            profile.onBindingCall(this, method, System.nanoTime() - start);
+        }
+    }
+
+    private Varargs dispatch(int method, Object target, Varargs args) {
+        Method m = methods[method];
+        Class<?>[] types = m.getParameterTypes();
+        Object[] objArgs = new Object[types.length];
+        for (int i = 0; i < objArgs.length; ++i) {
+            objArgs[i] = LuaAI.fromLuaValue(args.arg(i + 1), types[i]);
+        }
+
+        CommandQueue queue = CommandQueue.current();
+        if (queue != null) {
+            if (commands[method]) {
+                queue.add(target, names[method], objArgs, () -> call(method, target, objArgs));
+                if (shadowedGetters[method] >= 0) {
+                    queue.shadow(target, shadowedGetters[method], objArgs[0]);
+                }
+                if (shadowings[method] != null) {
+                    shadowings[method].shadow(queue, target, objArgs);
+                }
+                return queuedResult(m, target);
+            } else if (shadowed[method]) {
+                Object shadow = queue.getShadow(target, method);
+                if (shadow != CommandQueue.NO_SHADOW) {
+                    return LuaAI.toLuaValue(shadow);
+                }
+            }
+        }
+
+        WorldSnapshot snapshot = WorldSnapshot.current();
+        if (snapshot != null) {
+            if (snapshotQueries[method] != null) {
+                return LuaAI.toLuaValue(snapshotQueries[method].answer(snapshot, target, objArgs));
+            } else if (objArgs.length == 0 && !commands[method]) {
+                Object value = snapshot.getValue(target, names[method]);
+                if (value != WorldSnapshot.NO_VALUE) {
+                    return LuaAI.toLuaValue(value);
+                }
+            }
+        }
+
+        return LuaAI.toLuaValue(call(method, target, objArgs));
+    }
+
+    Object call(int method, Object target, Object[] args) {
+        try {
+            return (Object) handles[method].invokeExact(target, args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Exception occurred invoking java method " + methods[method] + " with args " + Arrays.toString(args), e);
+        }
+    }
+
+    // what a command returns to the script when it is queued instead of run
+    private static Varargs queuedResult(Method m, Object target) {
+        Class<?> type = m.getReturnType();
+        if (type == boolean.class) {
+            return LuaValue.TRUE;
+        } else if (type != void.class && type.isInstance(target)) {
+            return LuaAI.toLuaValue(target);
+        }
+        return LuaValue.NONE;
+    }
+
+    /**
+     * A Java object seen from Lua. Methods are looked up through the class binding and cached per object once bound,
+     * so repeated calls in a script loop do not allocate.
+     */
+    static final class BoundObject extends LuaUserdata {
+
+        private final LuaBinding binding;
+        private LuaValue[] bound;
+
+        BoundObject(Object obj) {
+            this(obj, of(obj.getClass()));
+        }
+
+        private BoundObject(Object obj, LuaBinding binding) {
+            super(obj, binding.metatable);
+            this.binding = binding;
+        }
+
+        LuaBinding getBinding() {
+            return binding;
+        }
+
+        @Override
+        public LuaValue get(LuaValue key) {
+            int i = binding.indexOf(key);
+            if (i < 0) return NIL;
+            if (bound == null) {
+                bound = new LuaValue[binding.size()];
+            }
+            LuaValue f = bound[i];
+            if (f == null) {
+                f = bound[i] = new BoundMethod(this, i);
+            }
+            return f;
+        }
+
+        @Override
+        public String tojstring() {
+            return binding.klass.getSimpleName() + ": " + m_instance;
+        }
+    }
+
+    private static final class BoundMethod extends VarArgFunction {
+
+        private final BoundObject self;
+        private final int method;
+
+        private BoundMethod(BoundObject self, int method) {
+            this.self = self;
+            this.method = method;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            // accept both obj.f(...) and obj:f(...)
+            if (args.narg() > 0 && args.arg1() == self) {
+                args = args.subargs(2);
+            }
+            return self.binding.invoke(method, self.m_instance, args);
+        }
+
+        @Override
+        public String tojstring() {
+            return "function: " + self.binding.names[method];
+        }
+    }
+
+}
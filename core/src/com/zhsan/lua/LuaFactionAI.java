@@ -0,0 +1,23 @@
+package com.zhsan.lua;
+
+/**
+ * Runs ZHSanFactionAI.lua in the faction's own Lua runtime.
+ */
+public final class LuaFactionAI implements FactionAI {
+
+    public static final String NAME = "lua";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void run(AiContext context) {
+        FactionRuntime runtime = LuaAI.getRuntime(context.getScenario(), context.getFaction());
+        if (runtime != null) {
+            runtime.run(context);
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.zhsan.lua;
+
+import com.zhsan.gameobject.GameObject;
+import com.zhsan.gameobject.GameObjectList;
+import org.luaj.vm2.*;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+
+/**
+ * A GameObjectList seen from Lua, as a sequence indexed from 1. Elements are wrapped only when a script reads them,
+ * so taking the length or looking one element up by id does not touch the rest. pairs, ipairs, # and table.sort
+ * work as on a plain table; the first write turns it into one.
+ *
+ * Besides indexing, the list offers getById(id), getIds(), size() and filter(predicate), the last being an
+ * iterator for the generic for.
+ */
+final class LuaList extends LuaTable {
+
+    private static final LuaString GET_BY_ID = LuaString.valueOf("getById");
+    private static final LuaString GET_IDS = LuaString.valueOf("getIds");
+    private static final LuaString SIZE = LuaString.valueOf("size");
+    private static final LuaString FILTER = LuaString.valueOf("filter");
+
+    private static final LuaTable METATABLE = LuaValue.tableOf();
+    static {
+        METATABLE.set(LuaValue.INDEX, new TwoArgFunction() {
+            @Override
+            public LuaValue call(LuaValue self, LuaValue key) {
+                return self instanceof LuaList ? ((LuaList) self).listMethod(key) : NIL;
+            }
+        });
+        METATABLE.set("__name", LuaValue.valueOf("GameObjectList"));
+    }
+
+    private final GameObjectList<?> list;
+    private final int size;
+    private GameObject[] items;
+    private boolean materialized;
+
+    private LuaValue getById, getIds, sizeFunction, filter;
+
+    LuaList(GameObjectList<?> list) {
+        super(list.size(), 0);
+        this.list = list;
+        this.size = list.size();
+        setmetatable(METATABLE);
+    }
+
+    private GameObject item(int i) {
+        if (items == null) {
+            items = list.getAll().toArray(new GameObject[size]);
+        }
+        return items[i];
+    }
+
+    // the Lua value at 1-based key, wrapping it on first access
+    private LuaValue element(int key) {
+        LuaValue v = array[key - 1];
+        if (v == null) {
+            v = array[key - 1] = new LuaBinding.BoundObject(item(key - 1));
+        }
+        return v;
+    }
+
+    private boolean isLazy(int key) {
+        return !materialized && key > 0 && key <= size;
+    }
+
+    private void materialize() {
+        if (materialized) return;
+        for (int i = 1; i <= size; ++i) {
+            element(i);
+        }
+        materialized = true;
+    }
+
+    @Override
+    public LuaValue rawget(int key) {
+        return isLazy(key) ? element(key) : super.rawget(key);
+    }
+
+    @Override
+    public LuaValue rawget(LuaValue key) {
+        return key.isinttype() && isLazy(key.toint()) ? element(key.toint()) : super.rawget(key);
+    }
+
+    @Override
+    public void rawset(int key, LuaValue value) {
+        materialize();
+        super.rawset(key, value);
+    }
+
+    @Override
+    public void rawset(LuaValue key, LuaValue value) {
+        materialize();
+        super.rawset(key, value);
+    }
+
+    @Override
+    public int rawlen() {
+        return materialized ? super.rawlen() : size;
+    }
+
+    @Override
+    public Varargs next(LuaValue key) {
+        if (!materialized) {
+            int k = key.isnil() ? 0 : key.isinttype() ? key.toint() : -1;
+            if (k >= 0 && k < size) {
+                return varargsOf(LuaInteger.valueOf(k + 1), element(k + 1));
+            }
+        }
+        return super.next(key);
+    }
+
+    @Override
+    public Varargs inext(LuaValue key) {
+        int k = key.checkint() + 1;
+        return isLazy(k) ? varargsOf(LuaInteger.valueOf(k), element(k)) : super.inext(key);
+    }
+
+    @Override
+    public void sort(LuaValue comparator) {
+        materialize();
+        super.sort(comparator);
+    }
+
+    @Override
+    public void insert(int pos, LuaValue value) {
+        materialize();
+        super.insert(pos, value);
+    }
+
+    @Override
+    public LuaValue remove(int pos) {
+        materialize();
+        return super.remove(pos);
+    }
+
+    private LuaValue listMethod(LuaValue key) {
+        if (GET_BY_ID.raweq(key)) {
+            if (getById == null) {
+                getById = new VarArgFunction() {
+                    @Override
+                    public Varargs invoke(Varargs args) {
+                        GameObject o = list.get(self(args).checkint(1));
+                        return o == null ? NIL : new LuaBinding.BoundObject(o);
+                    }
+                };
+            }
+            return getById;
+        } else if (GET_IDS.raweq(key)) {
+            if (getIds == null) {
+                getIds = new VarArgFunction() {
+                    @Override
+                    public Varargs invoke(Varargs args) {
+                        LuaTable ids = new LuaTable(size, 0);
+                        int i = 1;
+                        for (GameObject o : list) {
+                            ids.rawset(i++, LuaValue.valueOf(o.getId()));
+                        }
+                        return ids;
+                    }
+                };
+            }
+            return getIds;
+        } else if (SIZE.raweq(key)) {
+            if (sizeFunction == null) {
+                sizeFunction = new VarArgFunction() {
+                    @Override
+                    public Varargs invoke(Varargs args) {
+                        return LuaValue.valueOf(LuaList.this.length());
+                    }
+                };
+            }
+            return sizeFunction;
+        } else if (FILTER.raweq(key)) {
+            if (filter == null) {
+                filter = new VarArgFunction() {
+                    @Override
+                    public Varargs invoke(Varargs args) {
+                        return filterIterator(self(args).checkfunction(1));
+                    }
+                };
+            }
+            return filter;
+        }
+        return NIL;
+    }
+
+    // accept both list.f(...) and list:f(...)
+    private Varargs self(Varargs args) {
+        return args.narg() > 0 && args.arg1() == this ? args.subargs(2) : args;
+    }
+
+    private LuaValue filterIterator(LuaFunction predicate) {
+        return new VarArgFunction() {
+            private int next = 1;
+
+            @Override
+            public Varargs invoke(Varargs args) {
+                for (int n = LuaList.this.length(); next <= n; ) {
+                    int k = next++;
+                    LuaValue v = LuaList.this.rawget(k);
+                    if (!v.isnil() && predicate.call(v).toboolean()) {
+                        return varargsOf(LuaInteger.valueOf(k), v);
+                    }
+                }
+                return NIL;
+            }
+        };
+    }
+
+}
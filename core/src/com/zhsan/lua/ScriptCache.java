@@ -0,0 +1,202 @@
+package com.zhsan.lua;
+
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.luajc.JavaGen;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Compiled Lua chunks shared by every faction runtime. A chunk is compiled again only when its file has changed.
+ *
+ * Chunks can also be compiled to JVM classes with LuaJC. The classes of a script are kept in memory and in a jar
+ * under LuaAI.CLASSES, which is reused as long as it is newer than the script.
+ */
+final class ScriptCache {
+
+    private static final class Entry {
+        private final long lastModified;
+        private final Prototype prototype;
+
+        private Entry(long lastModified, Prototype prototype) {
+            this.lastModified = lastModified;
+            this.prototype = prototype;
+        }
+    }
+
+    private static final class CompiledEntry {
+        private final long lastModified;
+        private final Class<?> chunk;
+
+        private CompiledEntry(long lastModified, Class<?> chunk) {
+            this.lastModified = lastModified;
+            this.chunk = chunk;
+        }
+    }
+
+    private static final class ChunkClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private ChunkClassLoader(Map<String, byte[]> classes) {
+            super(ScriptCache.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CompiledEntry> compiled = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Long> failed = new ConcurrentHashMap<>();
+
+    private ScriptCache() {}
+
+    static Prototype get(String path) throws IOException {
+        File f = new File(path);
+        long lastModified = f.lastModified();
+
+        Entry e = cache.get(path);
+        if (e != null && e.lastModified == lastModified) {
+            return e.prototype;
+        }
+
+        Prototype p;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(f))) {
+            p = LuaC.instance.compile(is, "@" + f.getName());
+        }
+        cache.put(path, new Entry(lastModified, p));
+        return p;
+    }
+
+    /**
+     * Load the chunk at path as JVM bytecode, bound to env. Why it cannot be compiled is logged to logger, once per
+     * version of the script.
+     * @return the chunk, or null if it cannot be compiled, in which case the caller should interpret it instead
+     */
+    static LuaFunction getCompiled(String path, LuaValue env, AiLog logger) {
+        File f = new File(path);
+        long lastModified = f.lastModified();
+
+        Long failedAt = failed.get(path);
+        if (failedAt != null && failedAt == lastModified) {
+            return null;
+        }
+
+        try {
+            CompiledEntry e = compiled.get(path);
+            if (e == null || e.lastModified != lastModified) {
+                e = new CompiledEntry(lastModified, compile(f));
+                compiled.put(path, e);
+            }
+
+            LuaFunction chunk = (LuaFunction) e.chunk.getDeclaredConstructor().newInstance();
+            chunk.initupvalue1(env);
+            return chunk;
+        } catch (Exception | LinkageError e) {
+            // e.g. BCEL is missing or the generated class does not verify
+            logger.warn("-- cannot compile " + path + " with LuaJC, interpreting it instead: " + e);
+            failed.put(path, lastModified);
+            return null;
+        }
+    }
+
+    private static Class<?> compile(File script) throws IOException, ClassNotFoundException {
+        String className = toClassName(script.getName());
+        File jar = new File(LuaAI.CLASSES + script.getName() + ".jar");
+
+        Map<String, byte[]> classes;
+        if (jar.lastModified() > script.lastModified()) {
+            classes = readJar(jar);
+        } else {
+            classes = new HashMap<>();
+            collect(new JavaGen(get(script.getPath()), className, script.getName(), false), classes);
+            writeJar(jar, classes);
+        }
+
+        return new ChunkClassLoader(classes).loadClass(className);
+    }
+
+    private static void collect(JavaGen gen, Map<String, byte[]> classes) {
+        classes.put(gen.classname, gen.bytecode);
+        if (gen.inners != null) {
+            for (JavaGen inner : gen.inners) {
+                collect(inner, classes);
+            }
+        }
+    }
+
+    private static Map<String, byte[]> readJar(File jar) throws IOException {
+        Map<String, byte[]> classes = new HashMap<>();
+        try (JarInputStream in = new JarInputStream(new BufferedInputStream(new FileInputStream(jar)))) {
+            JarEntry entry;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            while ((entry = in.getNextJarEntry()) != null) {
+                buffer.reset();
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    buffer.write(chunk, 0, n);
+                }
+                String name = entry.getName();
+                classes.put(name.substring(0, name.length() - ".class".length()), buffer.toByteArray());
+            }
+        }
+        return classes;
+    }
+
+    private static void writeJar(File jar, Map<String, byte[]> classes) {
+        // the jar only saves compilation next time, so failing to write it is not fatal
+        try {
+            File dir = jar.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("cannot create " + dir);
+            }
+            File tmp = File.createTempFile(jar.getName(), ".tmp", dir);
+            try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+                    out.putNextEntry(new JarEntry(c.getKey() + ".class"));
+                    out.write(c.getValue());
+                    out.closeEntry();
+                }
+            }
+            Files.move(tmp.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String toClassName(String fileName) {
+        String stub = fileName.endsWith(".lua") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < stub.length(); ++i) {
+            char c = stub.charAt(i);
+            boolean valid = i == 0 ? Character.isJavaIdentifierStart(c) : Character.isJavaIdentifierPart(c);
+            result.append(valid ? c : '_');
+        }
+        return result.toString();
+    }
+
+    static void clear() {
+        cache.clear();
+        compiled.clear();
+        failed.clear();
+    }
+
+}
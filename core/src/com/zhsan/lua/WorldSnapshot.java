@@ -0,0 +1,443 @@
+package com.zhsan.lua;
+
+import com.zhsan.common.Point;
+import com.zhsan.gameobject.*;
+import org.luaj.vm2.LuaString;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The answers to the expensive AI queries, computed once per day after the simulation and shared read-only by all
+ * faction AIs. Objects are held in arrays indexed by id, and the groupings the scripts ask for, such as the persons
+ * in an architecture, are built in a single pass over the scenario.
+ *
+ * It also copies the values of the exported getters without arguments that answer a number, a boolean or a string,
+ * so the whole run sees the world as of the moment the snapshot was taken, even if the world changes while the AIs
+ * run.
+ *
+ * While a snapshot is bound to the current thread, calls of the exported methods listed here, and of the copied
+ * getters, are answered from it instead of the live objects. The bulk queries of GameScenario are answered from it
+ * too, and see the values shadowed by the commands the faction has queued so far, as the single getters do. Java
+ * code of a FactionAI that calls the getters of the objects directly reads the live world.
+ */
+public final class WorldSnapshot {
+
+    interface Query {
+        Object answer(WorldSnapshot s, Object target, Object[] args);
+    }
+
+    private static final class FactionData {
+        private GameObjectList<Section> sections = new GameObjectList<>();
+        private int persons, architectures, militaries, troops;
+    }
+
+    private static final class ArchitectureData {
+        private GameObjectList<Person> persons = new GameObjectList<>();
+        private GameObjectList<MilitaryKind> creatableKinds = new GameObjectList<>();
+        private boolean canChangeMayor;
+    }
+
+    private static final FactionData NO_FACTION = new FactionData();
+    private static final ArchitectureData NO_ARCHITECTURE = new ArchitectureData();
+    private static final GameObjectList<Architecture> NO_ARCHITECTURES = new GameObjectList<>(new GameObjectList<>(), true);
+    static {
+        NO_FACTION.sections = new GameObjectList<>(NO_FACTION.sections, true);
+        NO_ARCHITECTURE.persons = new GameObjectList<>(NO_ARCHITECTURE.persons, true);
+        NO_ARCHITECTURE.creatableKinds = new GameObjectList<>(NO_ARCHITECTURE.creatableKinds, true);
+    }
+
+    static final Object NO_VALUE = new Object();
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * The getters of a class whose values a snapshot copies
+     */
+    private static final class Getters {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final MethodHandle[] handles;
+
+        private Getters(Class<?> klass) {
+            List<MethodHandle> handles = new ArrayList<>();
+            for (Method m : klass.getMethods()) {
+                if (Modifier.isStatic(m.getModifiers()) || m.isBridge() || m.getParameterCount() > 0 ||
+                        m.isAnnotationPresent(LuaAI.AiCommand.class)) {
+                    continue;
+                }
+                Class<?> type = m.getReturnType();
+                if (m.isAnnotationPresent(LuaAI.ExportToLua.class) && getQuery(klass, m.getName()) == null &&
+                        ((type.isPrimitive() && type != void.class) || type == String.class)) {
+                    try {
+                        handles.add(MethodHandles.publicLookup().unreflect(m).asType(GETTER));
+                        index.put(m.getName(), index.size());
+                    } catch (IllegalAccessException e) {
+                        // not readable from here, so left to the live object
+                    }
+                }
+            }
+            this.handles = handles.toArray(new MethodHandle[handles.size()]);
+        }
+    }
+
+    private static final ClassValue<Getters> getters = new ClassValue<Getters>() {
+        @Override
+        protected Getters computeValue(Class<?> type) {
+            return new Getters(type);
+        }
+    };
+
+    private static final ThreadLocal<WorldSnapshot> current = new ThreadLocal<>();
+
+    private static final Map<Class<?>, Map<String, Query>> queries = new HashMap<>();
+    static {
+        addQuery(GameScenario.class, "getMilitaryKinds", (s, t, a) -> s.militaryKinds);
+        addQuery(GameScenario.class, "getArchitecture", (s, t, a) -> byId(s.architectures, (Integer) a[0]));
+        addQuery(GameScenario.class, "getPerson", (s, t, a) -> byId(s.persons, (Integer) a[0]));
+        addQuery(GameScenario.class, "getMilitary", (s, t, a) -> byId(s.militaries, (Integer) a[0]));
+        addQuery(GameScenario.class, "getTroop", (s, t, a) -> byId(s.troops, (Integer) a[0]));
+        addQuery(Faction.class, "getSections", (s, t, a) -> s.factionOf(t).sections);
+        addQuery(Faction.class, "getPersonCount", (s, t, a) -> s.factionOf(t).persons);
+        addQuery(Faction.class, "getArchitectureCount", (s, t, a) -> s.factionOf(t).architectures);
+        addQuery(Faction.class, "getMilitaryCount", (s, t, a) -> s.factionOf(t).militaries);
+        addQuery(Faction.class, "getTroopCount", (s, t, a) -> s.factionOf(t).troops);
+        addQuery(Section.class, "getArchitectures", (s, t, a) -> s.sectionArchitectures.getOrDefault(t, NO_ARCHITECTURES));
+        addQuery(Architecture.class, "getPersons", (s, t, a) -> s.architectureOf(t).persons);
+        addQuery(Architecture.class, "getActualCreatableMilitaryKinds", (s, t, a) -> s.architectureOf(t).creatableKinds);
+        addQuery(Architecture.class, "canChangeMayorToOther", (s, t, a) -> s.architectureOf(t).canChangeMayor);
+        addQuery(GameScenario.class, "getIds", (s, t, a) -> s.ids((String) a[0], (Integer) a[1]));
+        addQuery(GameScenario.class, "getPersonIds", (s, t, a) -> s.personIds((Integer) a[0], (String) a[1], (String) a[2]));
+        addQuery(GameScenario.class, "getValues", (s, t, a) -> s.values((GameScenario) t, (String) a[0], (int[]) a[1], (String) a[2]));
+        addQuery(GameScenario.class, "getSum", (s, t, a) ->
+                Arrays.stream(s.values((GameScenario) t, (String) a[0], (int[]) a[1], (String) a[2])).sum());
+        addQuery(GameScenario.class, "getMax", (s, t, a) ->
+                Arrays.stream(s.values((GameScenario) t, (String) a[0], (int[]) a[1], (String) a[2])).max().orElse(Double.NEGATIVE_INFINITY));
+        addQuery(GameScenario.class, "getTroopIdsNear", (s, t, a) -> s.troopIdsNear((Integer) a[0], (Double) a[1]));
+    }
+
+    private static void addQuery(Class<?> klass, String method, Query query) {
+        queries.computeIfAbsent(klass, k -> new HashMap<>()).put(method, query);
+    }
+
+    static Query getQuery(Class<?> klass, String method) {
+        for (Class<?> c = klass; c != null; c = c.getSuperclass()) {
+            Map<String, Query> q = queries.get(c);
+            if (q != null && q.containsKey(method)) {
+                return q.get(method);
+            }
+        }
+        return null;
+    }
+
+    private final LocalDate date;
+
+    private final GameObject[] factions, sections, architectures, persons, militaries, troops;
+    private final GameObjectList<MilitaryKind> militaryKinds;
+
+    private final Map<Object, FactionData> factionData = new IdentityHashMap<>();
+    private final Map<Object, ArchitectureData> architectureData = new IdentityHashMap<>();
+    private final Map<Object, GameObjectList<Architecture>> sectionArchitectures = new IdentityHashMap<>();
+    private final Map<Object, Object[]> values = new IdentityHashMap<>();
+    private final Map<Object, Faction> owners = new IdentityHashMap<>();
+    private final Map<Object, Person.State> personStates = new IdentityHashMap<>();
+    private final Map<Object, Point> troopLocations = new IdentityHashMap<>();
+
+    public WorldSnapshot(GameScenario scen) {
+        this.date = scen.getGameDate();
+        this.militaryKinds = scen.getMilitaryKinds();
+
+        this.factions = index(scen.getFactions());
+        this.sections = index(scen.getSections());
+        this.architectures = index(scen.getArchitectures());
+        this.persons = index(scen.getPersons());
+        this.militaries = index(scen.getMilitaries());
+        this.troops = index(scen.getTroops());
+
+        for (Faction f : scen.getFactions()) {
+            factionData.put(f, new FactionData());
+        }
+
+        for (Section s : scen.getSections()) {
+            sectionArchitectures.put(s, new GameObjectList<>());
+            FactionData f = factionData.get(s.getBelongedFaction());
+            if (f != null) {
+                f.sections.add(s);
+            }
+        }
+
+        for (Architecture a : scen.getArchitectures()) {
+            ArchitectureData d = new ArchitectureData();
+            d.creatableKinds = new GameObjectList<>(a.getActualCreatableMilitaryKinds(), true);
+            architectureData.put(a, d);
+
+            GameObjectList<Architecture> inSection = sectionArchitectures.get(a.getBelongedSection());
+            if (inSection != null) {
+                inSection.add(a);
+            }
+            FactionData f = factionData.get(a.getBelongedFaction());
+            if (f != null) {
+                f.architectures++;
+            }
+        }
+
+        for (Person p : scen.getPersons()) {
+            if (p.getState() == Person.State.NORMAL && p.getMovingDays() == 0) {
+                ArchitectureData d = architectureData.get(p.getLocation());
+                if (d != null) {
+                    d.persons.add(p);
+                }
+            }
+            personStates.put(p, p.getState());
+            FactionData f = factionData.get(p.getBelongedFaction());
+            if (f != null) {
+                f.persons++;
+            }
+        }
+
+        for (Military m : scen.getMilitaries()) {
+            FactionData f = factionData.get(m.getBelongedFaction());
+            if (f != null) {
+                f.militaries++;
+            }
+        }
+
+        for (Troop t : scen.getTroops()) {
+            troopLocations.put(t, t.getLocation());
+            FactionData f = factionData.get(t.getBelongedFaction());
+            if (f != null) {
+                f.troops++;
+            }
+        }
+
+        for (Architecture a : scen.getArchitectures()) {
+            // as Architecture.canChangeMayorToOther, without looking for its persons again
+            Faction f = a.getBelongedFaction();
+            architectureData.get(a).canChangeMayor = architectureData.get(a).persons.size() > 0 && f != null &&
+                    f.getLeader().getLocation() != a;
+        }
+
+        for (GameObject[] objects : Arrays.asList(sections, architectures, persons, militaries, troops)) {
+            for (GameObject o : objects) {
+                if (o instanceof HasFaction) {
+                    owners.put(o, ((HasFaction) o).getBelongedFaction());
+                }
+            }
+        }
+
+        copyValues(scen.getFactions());
+        copyValues(scen.getSections());
+        copyValues(scen.getArchitectures());
+        copyValues(scen.getPersons());
+        copyValues(scen.getMilitaries());
+        copyValues(scen.getTroops());
+
+        sectionArchitectures.replaceAll((k, v) -> new GameObjectList<>(v, true));
+        factionData.values().forEach(f -> f.sections = new GameObjectList<>(f.sections, true));
+        architectureData.values().forEach(a -> a.persons = new GameObjectList<>(a.persons, true));
+    }
+
+    private static GameObject[] index(GameObjectList<?> list) {
+        int max = -1;
+        for (GameObject o : list) {
+            max = Math.max(max, o.getId());
+        }
+        GameObject[] result = new GameObject[max + 1];
+        for (GameObject o : list) {
+            result[o.getId()] = o;
+        }
+        return result;
+    }
+
+    private void copyValues(GameObjectList<?> list) {
+        for (GameObject o : list) {
+            MethodHandle[] handles = getters.get(o.getClass()).handles;
+            Object[] v = new Object[handles.length];
+            for (int i = 0; i < handles.length; ++i) {
+                try {
+                    v[i] = (Object) handles[i].invokeExact((Object) o);
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    // the getter throws for this object, so it is left to the live object, to throw there
+                    v[i] = NO_VALUE;
+                }
+            }
+            values.put(o, v);
+        }
+    }
+
+    /**
+     * The value the getter of the object had when the snapshot was taken, or NO_VALUE if it was not copied
+     */
+    Object getValue(Object target, String getter) {
+        Object[] v = values.get(target);
+        if (v == null) return NO_VALUE;
+        Integer i = getters.get(target.getClass()).index.get(getter);
+        return i == null ? NO_VALUE : v[i];
+    }
+
+    /**
+     * The value of the getter in the snapshot bound to the current thread, or NO_VALUE if there is none
+     */
+    static Object currentValue(Object target, String getter) {
+        WorldSnapshot s = current();
+        return s != null ? s.getValue(target, getter) : NO_VALUE;
+    }
+
+    private GameObject[] objectsOf(String kind) {
+        switch (kind) {
+            case "faction": return factions;
+            case "section": return sections;
+            case "architecture": return architectures;
+            case "person": return persons;
+            case "military": return militaries;
+            case "troop": return troops;
+            default: throw new IllegalArgumentException("Unknown kind of game object: " + kind);
+        }
+    }
+
+    private static int[] ids(List<GameObject> objects) {
+        int[] result = new int[objects.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = objects.get(i).getId();
+        }
+        return result;
+    }
+
+    /**
+     * The value of the getter as the running faction sees it: shadowed by a command it has queued, or else as copied
+     */
+    private Object seenValue(Object target, String getter) {
+        CommandQueue queue = CommandQueue.current();
+        if (queue != null) {
+            int i = LuaBinding.of(target.getClass()).indexOf(LuaString.valueOf(getter));
+            if (i >= 0) {
+                Object shadow = queue.getShadow(target, i);
+                if (shadow != CommandQueue.NO_SHADOW) {
+                    return shadow;
+                }
+            }
+        }
+        return getValue(target, getter);
+    }
+
+    // as GameScenario.getIds
+    private int[] ids(String kind, int factionId) {
+        Faction f = factionId < 0 ? null : (Faction) byId(factions, factionId);
+        List<GameObject> result = new ArrayList<>();
+        for (GameObject o : objectsOf(kind)) {
+            if (o != null && (factionId < 0 || o == f || (o instanceof HasFaction && owners.get(o) == f))) {
+                result.add(o);
+            }
+        }
+        return ids(result);
+    }
+
+    // as GameScenario.getPersonIds
+    private int[] personIds(int factionId, String state, String work) {
+        Faction f = factionId < 0 ? null : (Faction) byId(factions, factionId);
+        Person.State s = state == null ? null : Person.State.fromCSV(state);
+        String w = work == null ? null : Person.DoingWork.fromCSV(work).toCSV();
+        List<GameObject> result = new ArrayList<>();
+        for (GameObject p : persons) {
+            if (p != null && (factionId < 0 || owners.get(p) == f) && (s == null || personStates.get(p) == s) &&
+                    (w == null || w.equals(seenValue(p, "getDoingWork")))) {
+                result.add(p);
+            }
+        }
+        return ids(result);
+    }
+
+    // as GameScenario.getValues; attributes whose getter is not copied are read from the live objects
+    private double[] values(GameScenario scen, String kind, int[] ids, String attribute) {
+        GameObject[] objects = objectsOf(kind);
+        String getter = "get" + Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1);
+        double[] result = new double[ids.length];
+        double[] live = null;
+        for (int i = 0; i < ids.length; ++i) {
+            GameObject o = byId(objects, ids[i]);
+            if (o == null) continue;
+            Object v = seenValue(o, getter);
+            if (v instanceof Number) {
+                result[i] = ((Number) v).doubleValue();
+            } else {
+                if (live == null) {
+                    live = scen.getValues(kind, ids, attribute);
+                }
+                result[i] = live[i];
+            }
+        }
+        return result;
+    }
+
+    // as GameScenario.getTroopIdsNear
+    private int[] troopIdsNear(int architectureId, double distance) {
+        Architecture a = (Architecture) byId(architectures, architectureId);
+        List<GameObject> result = new ArrayList<>();
+        if (a == null) {
+            return ids(result);
+        }
+        for (GameObject t : troops) {
+            if (t == null) continue;
+            Point location = troopLocations.get(t);
+            for (Point p : a.getLocations()) {
+                if (p.distanceTo(location) <= distance) {
+                    result.add(t);
+                    break;
+                }
+            }
+        }
+        return ids(result);
+    }
+
+    private static GameObject byId(GameObject[] objects, int id) {
+        return id >= 0 && id < objects.length ? objects[id] : null;
+    }
+
+    private FactionData factionOf(Object faction) {
+        FactionData f = factionData.get(faction);
+        return f != null ? f : NO_FACTION;
+    }
+
+    private ArchitectureData architectureOf(Object architecture) {
+        ArchitectureData a = architectureData.get(architecture);
+        return a != null ? a : NO_ARCHITECTURE;
+    }
+
+    static WorldSnapshot current() {
+        return current.get();
+    }
+
+    static GameObjectList<Section> sectionsOf(Faction f) {
+        WorldSnapshot s = current();
+        return s != null ? s.factionOf(f).sections : f.getSections();
+    }
+
+    static GameObjectList<Architecture> architecturesOf(Section section) {
+        WorldSnapshot s = current();
+        return s != null ? s.sectionArchitectures.getOrDefault(section, NO_ARCHITECTURES) : section.getArchitectures();
+    }
+
+    static GameObjectList<Person> personsOf(Architecture a) {
+        WorldSnapshot s = current();
+        return s != null ? s.architectureOf(a).persons : a.getPersons();
+    }
+
+    void enter() {
+        current.set(this);
+    }
+
+    void exit() {
+        current.remove();
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.zhsan.screen;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
@@ -8,6 +9,7 @@ import com.badlogic.gdx.scenes.scene2d.InputListener;
 import com.badlogic.gdx.scenes.scene2d.ui.WidgetGroup;
 import com.zhsan.common.GlobalVariables;
 import com.zhsan.common.Point;
+import com.zhsan.gamecomponents.GlobalStrings;
 import com.zhsan.gamecomponents.PersonPortrait;
 import com.zhsan.gamecomponents.ScreenBlind;
 import com.zhsan.gamecomponents.commandframe.ArchitectureCommandFrame;
@@ -20,10 +22,11 @@ import com.zhsan.gamecomponents.textdialog.ConfirmationDialog;
 import com.zhsan.gamecomponents.textdialog.TextDialog;
 import com.zhsan.gamecomponents.toolbar.ToolBar;
 import com.zhsan.gameobject.*;
+import com.zhsan.lua.AiExecutor;
+import com.zhsan.lua.LuaAI;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -184,7 +187,7 @@ public class GameScreen extends WidgetGroup {
     public void showSaveGameFrame() {
         dayRunner.pauseRunDays();
         if (saveGameFrame == null) {
-            saveGameFrame = new FileGameFrame(FileGameFrame.Usage.SAVE, scen::save);
+            saveGameFrame = new FileGameFrame(FileGameFrame.Usage.SAVE, dayRunner::save);
             this.addActor(saveGameFrame);
         } else {
             saveGameFrame.show();
@@ -194,7 +197,11 @@ public class GameScreen extends WidgetGroup {
     public void showLoadGameFrame() {
         dayRunner.pauseRunDays();
         if (loadGameFrame == null) {
-            loadGameFrame = new FileGameFrame(FileGameFrame.Usage.LOAD, file -> scen = new GameScenario(file, false, -1));
+            loadGameFrame = new FileGameFrame(FileGameFrame.Usage.LOAD, file -> {
+                LuaAI.closeRuntimes();
+                GameScenario.awaitSaves();
+                scen = new GameScenario(file, false, -1);
+            });
             this.addActor(loadGameFrame);
         } else {
             loadGameFrame.show();
@@ -261,20 +268,13 @@ public class GameScreen extends WidgetGroup {
         return personPortrait.getSmallPortrait(id);
     }
 
-    private ExecutorService pool = Executors.newCachedThreadPool();
+    private AiExecutor aiExecutor = new AiExecutor();
     private void runAi() {
-        GameObjectList<Faction> factions = scen.getFactions();
-        List<Callable<Void>> runnables = new ArrayList<>();
-        factions.filter(f -> f != scen.getCurrentPlayer()).forEach(f -> runnables.add(() -> {
-            f.ai();
-            return null;
-        }));
-
-        try {
-            pool.invokeAll(runnables, GlobalVariables.aiTimeout, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        aiExecutor.run(scen, scen.getFactions().filter(f -> f != scen.getCurrentPlayer()).getAll());
+    }
+
+    private AiExecutor.PendingRun startAi() {
+        return aiExecutor.start(scen, scen.getFactions().filter(f -> f != scen.getCurrentPlayer()).getAll());
     }
 
     public class DayRunner {
@@ -292,6 +292,66 @@ public class GameScreen extends WidgetGroup {
         private volatile int moreDays;
         private final Object dayPauseLock = new Object();
 
+        // a save asked for while a day is running, taken once the day is over
+        private boolean savePending;
+        private FileHandle pendingSaveFile;
+
+        // with pipelineAi, the AI planned during the last day's animations, applied when the next day starts
+        private AiExecutor.PendingRun pendingAi;
+
+        private void applyPendingAi() {
+            if (pendingAi != null) {
+                pendingAi.apply();
+                pendingAi = null;
+            }
+        }
+
+        /**
+         * Save the game into the directory, or a new one if it is null. The game is taken into memory between days,
+         * right away if no day is running or else once the running day is over, and written in the background.
+         */
+        public void save(FileHandle out) {
+            synchronized (dayPauseLock) {
+                if (dayRunning) {
+                    savePending = true;
+                    pendingSaveFile = out;
+                    return;
+                }
+                startSave(out);
+            }
+        }
+
+        private void saveAtDayBoundary() {
+            synchronized (dayPauseLock) {
+                if (!savePending) return;
+                // the AI planned during the animations may still be writing to its memory
+                applyPendingAi();
+                savePending = false;
+                startSave(pendingSaveFile);
+                pendingSaveFile = null;
+            }
+        }
+
+        private void startSave(FileHandle out) {
+            getScenario().saveAsync(out, new GameScenario.OnSaveProgress() {
+                @Override
+                public void onSaveProgress(int done, int total) {
+                    String status = String.format(GlobalStrings.getString(GlobalStrings.Keys.SAVING), done, total);
+                    Gdx.app.postRunnable(() -> screenBlind.showSaveStatus(status, false));
+                }
+
+                @Override
+                public void onSaveDone(FileHandle directory, Exception error) {
+                    if (error != null) {
+                        error.printStackTrace();
+                    }
+                    String status = GlobalStrings.getString(error == null ?
+                            GlobalStrings.Keys.SAVED : GlobalStrings.Keys.SAVE_FAILED);
+                    Gdx.app.postRunnable(() -> screenBlind.showSaveStatus(status, true));
+                }
+            });
+        }
+
         public void continueRunDays() {
             if (dayRunning) {
                 pauseRunDays();
@@ -318,7 +378,11 @@ public class GameScreen extends WidgetGroup {
                 }
 
                 for (int i = 0; i < days; ++i) {
-                    dayRunning = true;
+                    synchronized (dayPauseLock) {
+                        dayRunning = true;
+                    }
+
+                    applyPendingAi();
 
                     getScenario().advanceDay(new GameScenario.OnTroopDone() {
                         @Override
@@ -345,6 +409,12 @@ public class GameScreen extends WidgetGroup {
                             });
                         }
                     });
+
+                    if (GlobalVariables.pipelineAi) {
+                        // advanceDay has resolved every attack and entry; the animations left only show them
+                        pendingAi = startAi();
+                    }
+
                     while (!mapLayer.isNoPendingTroopAnimations()){
                         try {
                             Thread.sleep(100);
@@ -354,7 +424,9 @@ public class GameScreen extends WidgetGroup {
                         // wait animation thread to clear its queue
                     }
 
-                    runAi();
+                    if (!GlobalVariables.pipelineAi) {
+                        runAi();
+                    }
 
                     synchronized (GameScreen.this) {
                         i -= moreDays;
@@ -370,9 +442,17 @@ public class GameScreen extends WidgetGroup {
 
                     architectureCommandFrame.invalidateData();
 
+                    saveAtDayBoundary();
+
+                    if (pauseDayRunner.get()) {
+                        // the player may look at and change the world while paused, or save it
+                        applyPendingAi();
+                        architectureCommandFrame.invalidateData();
+                    }
                     while (pauseDayRunner.get()) {
                         synchronized (dayPauseLock) {
                             try {
+                                saveAtDayBoundary();
                                 dayRunning = false;
                                 dayPauseLock.wait();
                             } catch (InterruptedException e) {
@@ -386,7 +466,12 @@ public class GameScreen extends WidgetGroup {
                     }
                 }
 
-                dayRunning = false;
+                applyPendingAi();
+
+                synchronized (dayPauseLock) {
+                    saveAtDayBoundary();
+                    dayRunning = false;
+                }
                 for (RunningDaysListener x : runningDaysListeners) {
                     x.stopped();
                 }
@@ -422,6 +507,9 @@ public class GameScreen extends WidgetGroup {
     }
 
     public void dispose() {
+        // the application is about to exit, and a save still being written would be cut short
+        GameScenario.awaitSaves();
+        aiExecutor.shutdown();
         personPortrait.dispose();
         toolBar.dispose();
         mapLayer.dispose();